@@ -1,6 +1,6 @@
 package com.github.ilpersi.BHBot;
 
-import java.awt.image.BufferedImage;
+import java.util.Arrays;
 
 /**
  * Use this class inside dungeons to understand if the player position has changed. This is useful together with autoShrines
@@ -17,11 +17,11 @@ public class AdventurePositionChecker {
     final private Bounds topRightImg = Bounds.fromWidthHeight( 650, 15,imgSize, imgSize);
     final private Bounds bottomRightImg = Bounds.fromWidthHeight(650, 310, imgSize, imgSize);
 
-    // Internal image fields to store previous position samples
-    private BufferedImage subImgTopLef;
-    private BufferedImage subImgBottomLeft;
-    private BufferedImage subImgTopRight;
-    private BufferedImage subImgBottomRight;
+    // Internal fields to store previous position samples
+    private int[] subImgTopLef;
+    private int[] subImgBottomLeft;
+    private int[] subImgTopRight;
+    private int[] subImgBottomRight;
 
     // Should we reset the previous position samples?
     private boolean resetStartPos;
@@ -30,39 +30,33 @@ public class AdventurePositionChecker {
     private long lastPositionTime;
 
     AdventurePositionChecker() {
-        subImgTopLef = null;
-        subImgBottomLeft = null;
-        subImgTopRight = null;
-        subImgBottomRight = null;
+        subImgTopLef = new int[imgSize * imgSize];
+        subImgBottomLeft = new int[imgSize * imgSize];
+        subImgTopRight = new int[imgSize * imgSize];
+        subImgBottomRight = new int[imgSize * imgSize];
 
         resetStartPos = true;
     }
 
     /**
-     * @param img a Buffered img to check if the position has changed
+     * @param frame a Frame to check if the position has changed
      * @return true if the position has not changes for a number of times specified in REQUIRED_CNT
      */
-    boolean isSamePosition(BufferedImage img, int minPosDelay) {
-        // When we have to reset the original position, we updated the internal sub images containing the samples
+    boolean isSamePosition(Frame frame, int minPosDelay) {
+        // When we have to reset the original position, we updated the internal samples
         if (resetStartPos) {
-            subImgTopLef = img.getSubimage(topLeftImg.x1, topLeftImg.y1, topLeftImg.width, topLeftImg.height);
-            subImgBottomLeft = img.getSubimage(bottomLeftImg.x1, bottomLeftImg.y1, bottomLeftImg.width, bottomLeftImg.height);
-            subImgTopRight = img.getSubimage(topRightImg.x1, topRightImg.y1, topRightImg.width, topRightImg.height);
-            subImgBottomRight = img.getSubimage(bottomRightImg.x1, bottomRightImg.y1, bottomRightImg.width, bottomRightImg.height);
+            copySample(frame, topLeftImg, subImgTopLef);
+            copySample(frame, bottomLeftImg, subImgBottomLeft);
+            copySample(frame, topRightImg, subImgTopRight);
+            copySample(frame, bottomRightImg, subImgBottomRight);
 
             resetStartPos = false;
             lastPositionTime = Misc.getTime();
             return false;
         }
 
-        // Temporary samples to do the comparison
-        BufferedImage tmpImgTopLef = img.getSubimage(topLeftImg.x1, topLeftImg.y1, topLeftImg.width, topLeftImg.height);
-        BufferedImage tmpImgBottomLeft = img.getSubimage(bottomLeftImg.x1, bottomLeftImg.y1, bottomLeftImg.width, bottomLeftImg.height);
-        BufferedImage tmpImgTopRight = img.getSubimage(topRightImg.x1, topRightImg.y1, topRightImg.width, topRightImg.height);
-        BufferedImage tmpImgBottomRight = img.getSubimage(bottomRightImg.x1, bottomRightImg.y1, bottomRightImg.width, bottomRightImg.height);
-
-        if (MD5Compare(tmpImgTopLef, subImgTopLef) && MD5Compare(tmpImgBottomLeft, subImgBottomLeft) &&
-                MD5Compare(tmpImgTopRight, subImgTopRight) && MD5Compare(tmpImgBottomRight, subImgBottomRight)) {
+        if (sameSample(frame, topLeftImg, subImgTopLef) && sameSample(frame, bottomLeftImg, subImgBottomLeft) &&
+                sameSample(frame, topRightImg, subImgTopRight) && sameSample(frame, bottomRightImg, subImgBottomRight)) {
             BHBotUnity.logger.debug("PositionChecker: position has not changed for "  + Misc.millisToHumanForm(Misc.getTime() - lastPositionTime) + ".");
         } else {
             resetStartPos = true;
@@ -78,15 +72,36 @@ public class AdventurePositionChecker {
     }
 
     /**
+     * Copies the pixels of a sample area of the frame, row by row.
      *
-     * To compare images we use the MD5: from tests it is approximately 5X faster than pixel comparison and,
-     * as images to compare are the same, it is very reliable
+     * @param frame The frame to sample
+     * @param bounds The sample area
+     * @param sample The array where the pixels are stored
+     */
+    private void copySample(Frame frame, Bounds bounds, int[] sample) {
+        for (int y = 0; y < bounds.height; y++) {
+            System.arraycopy(frame.pixels, ((bounds.y1 + y) * frame.width) + bounds.x1, sample, y * bounds.width, bounds.width);
+        }
+    }
+
+    /**
+     * Samples are compared directly on the frame pixels: as images to compare are the same, we stop at the first
+     * different pixel without copying the area or computing any hash.
      *
-     * @param imgActual The image we want to compare with the expected one
-     * @param imgExpected The expected image
-     * @return true if images are the same
+     * @param frame The frame we want to compare with the expected sample
+     * @param bounds The sample area
+     * @param sample The expected sample
+     * @return true if the frame area is the same of the sample
      */
-    private boolean MD5Compare(BufferedImage imgActual, BufferedImage imgExpected) {
-        return Misc.imgToMD5(imgActual).equals(Misc.imgToMD5(imgExpected));
+    private boolean sameSample(Frame frame, Bounds bounds, int[] sample) {
+        for (int y = 0; y < bounds.height; y++) {
+            int frameRow = ((bounds.y1 + y) * frame.width) + bounds.x1;
+
+            if (Arrays.mismatch(frame.pixels, frameRow, frameRow + bounds.width, sample, y * bounds.width, (y + 1) * bounds.width) != -1) {
+                return false;
+            }
+        }
+
+        return true;
     }
 }
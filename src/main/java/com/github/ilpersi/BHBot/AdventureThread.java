@@ -11,6 +11,7 @@ import java.util.List;
 import java.util.*;
 import java.util.concurrent.TimeUnit;
 import java.util.function.Function;
+import java.util.function.Supplier;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 import java.util.stream.Collectors;
@@ -100,13 +101,6 @@ public class AdventureThread implements Runnable {
 
     int adventureSpeed;
 
-    // Used when reading numbers from screen
-    private record NumberInfo(String value, int xPosition) {
-        @Override
-        public String toString() {
-            return value;}
-    }
-
     AdventureThread(BHBotUnity bot) {
         this.bot = bot;
 
@@ -194,9 +188,8 @@ public class AdventureThread implements Runnable {
 
                 //Dungeon crash failsafe, this can happen if you crash and reconnect quickly, then get placed back in the dungeon with no reconnect dialogue
                 if (bot.getState() == BHBotUnity.State.Loading) {
-                    MarvinSegment autoOn = MarvinSegment.fromCue(BHBotUnity.cues.get("AutoOn"), bot.browser);
-                    MarvinSegment autoOff = MarvinSegment.fromCue(BHBotUnity.cues.get("AutoOff"), bot.browser);
-                    if (autoOn != null || autoOff != null) { //if we're in Loading state, with auto button visible, then we need to change state
+                    ScreenClassifier.Result screen = ScreenClassifier.classify(bot.browser.getFrame(), bot.browser);
+                    if (screen.get("AutoOn") != null || screen.get("AutoOff") != null) { //if we're in Loading state, with auto button visible, then we need to change state
                         bot.setState(bot.getLastJoinedState()); // we are not sure what type of dungeon we are doing
                         BHBotUnity.logger.warn("Possible dungeon crash, activating failsafe. Restore to last known status: " + bot.getState());
                         bot.saveGameScreen("dungeon-crash-failsafe", "errors");
@@ -214,7 +207,7 @@ public class AdventureThread implements Runnable {
                     }
 
                     // If you start in the fishing zone, you have the character dialog coming up
-                    detectCharacterDialogAndHandleIt();
+                    if (screen.get("DialogLeft") != null || screen.get("DialogRight") != null) detectCharacterDialogAndHandleIt();
                 }
 
                 if (BHBotUnity.State.RerunRaid.equals(bot.getState())) {
@@ -235,8 +228,9 @@ public class AdventureThread implements Runnable {
                     continue;
                 }
 
-                // check if we are in the main menu:
-                seg = MarvinSegment.fromCue(BHBotUnity.cues.get("Main"), bot.browser);
+                // check if we are in the main menu. The frame is the latest one, as the character dialog is handled
+                // reading the screen until it is gone
+                seg = ScreenClassifier.classify(bot.browser.getFrame(), bot.browser).get("Main");
 
                 if (seg != null) {
 
@@ -345,7 +339,7 @@ public class AdventureThread implements Runnable {
                             }
 
                             final Set<Color> shardBarColors = Set.of(new Color(199, 79, 175), new Color(199, 79, 176), new Color(147, 47, 118));
-                            int shards = readResourceBarPercentage(seg, bot.settings.maxShards, Misc.BarOffsets.RAID.x, Misc.BarOffsets.RAID.y, shardBarColors, bot.browser.getImg());
+                            int shards = readResourceBarPercentage(seg, bot.settings.maxShards, Misc.BarOffsets.RAID.x, Misc.BarOffsets.RAID.y, shardBarColors, bot.browser.getFrame());
 
                             globalShards = shards;
                             BHBotUnity.logger.readout("Shards: " + shards + ", required: >" + bot.settings.minShards);
@@ -496,7 +490,7 @@ public class AdventureThread implements Runnable {
                             bot.browser.readScreen();
                             seg = MarvinSegment.fromCue("TokenBar", 5 * Misc.Durations.SECOND, bot.browser);
                             final Set<Color> tokenBarColors = Set.of(new Color(17, 208, 226), new Color(1, 133, 146), new Color(1, 145, 158));
-                            int tokens = readResourceBarPercentage(seg, bot.settings.maxTokens, Misc.BarOffsets.TG.x, Misc.BarOffsets.TG.y, tokenBarColors, bot.browser.getImg());
+                            int tokens = readResourceBarPercentage(seg, bot.settings.maxTokens, Misc.BarOffsets.TG.x, Misc.BarOffsets.TG.y, tokenBarColors, bot.browser.getFrame());
                             globalTokens = tokens;
                             BHBotUnity.logger.readout("Tokens: " + tokens + ", required: >" + bot.settings.minTokens + ", " +
                                     (trials ? "Trials" : "Gauntlet") + " cost: " + (trials ? bot.settings.costTrials : bot.settings.costGauntlet));
@@ -592,7 +586,7 @@ public class AdventureThread implements Runnable {
                                 }
 
                                 // select cost if needed:
-                                bot.browser.readScreen(2 * Misc.Durations.SECOND); // wait for the popup to stabilize a bit
+                                bot.browser.waitForStable(BHBotUnity.cues.get("Cost"), 2 * Misc.Durations.SECOND); // wait for the popup to stabilize a bit
                                 int cost = detectCost();
                                 if (cost == 0) { // error!
                                     BHBotUnity.logger.error("Due to an error#1 in cost detection, " + (trials ? "trials" : "gauntlet") + " will be skipped.");
@@ -688,7 +682,7 @@ public class AdventureThread implements Runnable {
                             final Set<Color> energyBarColors = Set.of(new Color(87, 133, 21), new Color(136, 197, 44));
 
                             seg = MarvinSegment.fromCue(BHBotUnity.cues.get("EnergyBar"), bot.browser);
-                            int energy = readResourceBarPercentage(seg, 100, Misc.BarOffsets.DUNGEON.x, Misc.BarOffsets.DUNGEON.y, energyBarColors, bot.browser.getImg());
+                            int energy = readResourceBarPercentage(seg, 100, Misc.BarOffsets.DUNGEON.x, Misc.BarOffsets.DUNGEON.y, energyBarColors, bot.browser.getFrame());
                             globalEnergy = energy;
                             BHBotUnity.logger.readout("Energy: " + energy + "%, required: >" + bot.settings.minEnergyPercentage + "%");
 
@@ -784,7 +778,7 @@ public class AdventureThread implements Runnable {
                                 while (vec != 0) { // move to the correct zone
                                     if (vec > 0) {
                                         // note that moving to the right will fail in case player has not unlocked the zone yet!
-                                        bot.browser.readScreen(Misc.Durations.SECOND); // wait for screen to stabilise
+                                        bot.browser.waitForStable(Misc.SIGNATURE_BOUNDS, Misc.Durations.SECOND); // wait for screen to stabilise
                                         seg = MarvinSegment.fromCue(BHBotUnity.cues.get("RightArrow"), bot.browser);
                                         if (seg == null) {
                                             BHBotUnity.logger.error("Right button not found, zone unlocked?");
@@ -801,7 +795,8 @@ public class AdventureThread implements Runnable {
                                     }
                                 }
 
-                                bot.browser.readScreen(2 * Misc.Durations.SECOND);
+                                // the zone is sliding in until its signature area stops changing
+                                bot.browser.waitForStable(Misc.SIGNATURE_BOUNDS, 2 * Misc.Durations.SECOND);
 
                                 // click on the dungeon:
                                 Point p = getDungeonIconPos(goalZone, goalDungeon);
@@ -892,7 +887,7 @@ public class AdventureThread implements Runnable {
 
                             final Set<Color> ticketBarColors = Set.of(new Color (152, 9, 40), new Color (226, 42, 81));
                             seg = MarvinSegment.fromCue(BHBotUnity.cues.get("TicketBar"), bot.browser);
-                            int tickets = readResourceBarPercentage(seg, bot.settings.maxTickets, Misc.BarOffsets.PVP.x, Misc.BarOffsets.PVP.y, ticketBarColors, bot.browser.getImg());
+                            int tickets = readResourceBarPercentage(seg, bot.settings.maxTickets, Misc.BarOffsets.PVP.x, Misc.BarOffsets.PVP.y, ticketBarColors, bot.browser.getFrame());
 
                             globalTickets = tickets;
                             BHBotUnity.logger.readout("Tickets: " + tickets + ", required: >" + bot.settings.minTickets + ", PVP cost: " + bot.settings.costPVP);
@@ -935,7 +930,7 @@ public class AdventureThread implements Runnable {
                                 bot.browser.clickOnSeg(seg);
 
                                 // select cost if needed:
-                                bot.browser.readScreen(2 * Misc.Durations.SECOND); // wait for the popup to stabilize a bit
+                                bot.browser.waitForStable(BHBotUnity.cues.get("Cost"), 2 * Misc.Durations.SECOND); // wait for the popup to stabilize a bit
                                 int cost = detectCost();
                                 if (cost == 0) { // error!
                                     BHBotUnity.logger.error("Due to an error#1 in cost detection, PVP will be skipped.");
@@ -1053,7 +1048,7 @@ public class AdventureThread implements Runnable {
 
                             seg = MarvinSegment.fromCue("BadgeBar", 5 * Misc.Durations.SECOND, bot.browser);
                             final Set<Color> badgeBarColors = Set.of(new Color (17, 208, 226), new Color (1, 133, 146), new Color (17, 198, 215), new Color (17, 201, 218), new Color (18, 205, 223));
-                            int badges = readResourceBarPercentage(seg, bot.settings.maxBadges, Misc.BarOffsets.Badge.x, Misc.BarOffsets.Badge.y, badgeBarColors, bot.browser.getImg());
+                            int badges = readResourceBarPercentage(seg, bot.settings.maxBadges, Misc.BarOffsets.Badge.x, Misc.BarOffsets.Badge.y, badgeBarColors, bot.browser.getFrame());
 
                             globalBadges = badges;
                             BHBotUnity.logger.readout("Badges: " + badges + ", required: >" + bot.settings.minBadges + ", " + badgeEvent.toString() + " cost: " +
@@ -1102,7 +1097,7 @@ public class AdventureThread implements Runnable {
                                     }
 
                                     // select cost if needed:
-                                    bot.browser.readScreen(2 * Misc.Durations.SECOND); // wait for the popup to stabilize a bit
+                                    bot.browser.waitForStable(BHBotUnity.cues.get("Cost"), 2 * Misc.Durations.SECOND); // wait for the popup to stabilize a bit
                                     int cost = detectCost();
                                     if (cost == 0) { // error!
                                         BHBotUnity.logger.error("Due to an error#1 in cost detection, GVG will be skipped.");
@@ -1224,7 +1219,7 @@ public class AdventureThread implements Runnable {
                                     BHBotUnity.logger.info("Attempting invasion...");
 
                                     // select cost if needed:
-                                    bot.browser.readScreen(2 * Misc.Durations.SECOND); // wait for the popup to stabilize a bit
+                                    bot.browser.waitForStable(BHBotUnity.cues.get("Cost"), 2 * Misc.Durations.SECOND); // wait for the popup to stabilize a bit
                                     int cost = detectCost();
                                     if (cost == 0) { // error!
                                         BHBotUnity.logger.error("Due to an error#1 in cost detection, invasion will be skipped.");
@@ -1531,7 +1526,7 @@ public class AdventureThread implements Runnable {
                             }
 
                             final Set<Color> xealBarColors = Set.of(new Color (0, 86, 208), new Color (0, 77, 190), new Color (0, 138, 255));
-                            int xeals = readResourceBarPercentage(seg, bot.settings.maxXeals, Misc.BarOffsets.WB.x, Misc.BarOffsets.WB.y, xealBarColors, bot.browser.getImg());
+                            int xeals = readResourceBarPercentage(seg, bot.settings.maxXeals, Misc.BarOffsets.WB.x, Misc.BarOffsets.WB.y, xealBarColors, bot.browser.getFrame());
 
                             globalXeals = xeals;
                             BHBotUnity.logger.readout("Xeals: " + xeals + ", required: >" + bot.settings.minXeals);
@@ -1721,13 +1716,13 @@ public class AdventureThread implements Runnable {
                                         if (wbSetting.minimumTotalTS > 0) {
                                             // We refresh the screen to be sure we get the most up to date TS values
                                             bot.browser.readScreen();
-                                            totalTS = getWorldBossTotalTS(bot.browser.getImg());
+                                            totalTS = getWorldBossTotalTS(bot.browser.getFrame());
 
                                             // If readNumFromImg has errors it will return 0, so we make sure this is not the case
                                             if (totalTS > 0 && totalTS >= wbSetting.minimumTotalTS) {
 
                                                 // We need to check that the current party members are ready
-                                                List<MarvinSegment> unreadySegs = FindSubimage.findSubimage(bot.browser.getImg(), BHBotUnity.cues.get("Unready").im, 1.0, true, false, unreadyBounds.x1, unreadyBounds.y1, unreadyBounds.x2, unreadyBounds.y2);
+                                                List<MarvinSegment> unreadySegs = FindSubimage.findSubimage(bot.browser.getFrame(), BHBotUnity.cues.get("Unready").kernel, 1.0, true, false, unreadyBounds.x1, unreadyBounds.y1, unreadyBounds.x2, unreadyBounds.y2);
 
                                                 if (unreadySegs.isEmpty()) {
                                                     BHBotUnity.logger.info("TS for lobby is " + totalTS + ". " + wbSetting.minimumTotalTS + " requirement reached in " + Misc.millisToHumanForm(Misc.getTime() - startTime));
@@ -1741,7 +1736,7 @@ public class AdventureThread implements Runnable {
 
                                         }
 
-                                        List<MarvinSegment> inviteSegs = FindSubimage.findSubimage(bot.browser.getImg(), BHBotUnity.cues.get("Invite").im, 1.0, true, false, inviteBounds.x1, inviteBounds.y1, inviteBounds.x2, inviteBounds.y2);
+                                        List<MarvinSegment> inviteSegs = FindSubimage.findSubimage(bot.browser.getFrame(), BHBotUnity.cues.get("Invite").kernel, 1.0, true, false, inviteBounds.x1, inviteBounds.y1, inviteBounds.x2, inviteBounds.y2);
                                         // At least one person joined the lobby
                                         if (inviteSegs.size() < inviteCnt) {
 
@@ -1749,7 +1744,7 @@ public class AdventureThread implements Runnable {
                                             if (wbSetting.minimumPlayerTS > 0) {
                                                 // We refresh the screen to be sure we get the most up to date TS values
                                                 bot.browser.readScreen();
-                                                System.arraycopy(getWorldBossPlayersTS(inviteCnt, bot.browser.getImg()), 0, playersTS, 0, inviteCnt);
+                                                System.arraycopy(getWorldBossPlayersTS(inviteCnt, bot.browser.getFrame()), 0, playersTS, 0, inviteCnt);
                                                 // playersTS = getWorldBossPlayersTS(inviteCnt);
 
                                                 for (int partyMemberPos = 0; partyMemberPos < inviteCnt; partyMemberPos++) {
@@ -1790,15 +1785,15 @@ public class AdventureThread implements Runnable {
                                         }
 
                                         if (inviteSegs.isEmpty()) {
-                                            List<MarvinSegment> unreadySegs = FindSubimage.findSubimage(bot.browser.getImg(), BHBotUnity.cues.get("Unready").im, 1.0, true, false, unreadyBounds.x1, unreadyBounds.y1, unreadyBounds.x2, unreadyBounds.y2);
+                                            List<MarvinSegment> unreadySegs = FindSubimage.findSubimage(bot.browser.getFrame(), BHBotUnity.cues.get("Unready").kernel, 1.0, true, false, unreadyBounds.x1, unreadyBounds.y1, unreadyBounds.x2, unreadyBounds.y2);
 
                                             if (unreadySegs.isEmpty()) {
                                                 BHBotUnity.logger.info("Lobby filled and ready in " + Misc.millisToHumanForm(Misc.getTime() - startTime));
                                                 lobbyTimeout = false;
                                                 if (bot.settings.debugWBTS) {
                                                     bot.browser.readScreen();
-                                                    totalTS = getWorldBossTotalTS(bot.browser.getImg());
-                                                    System.arraycopy(getWorldBossPlayersTS(inviteCnt, bot.browser.getImg()), 0, playersTS, 0, inviteCnt);
+                                                    totalTS = getWorldBossTotalTS(bot.browser.getFrame());
+                                                    System.arraycopy(getWorldBossPlayersTS(inviteCnt, bot.browser.getFrame()), 0, playersTS, 0, inviteCnt);
                                                 }
                                                 saveDebugWBTSScreen(totalTS, playersTS, lastSavedName);
                                                 break;
@@ -1810,9 +1805,9 @@ public class AdventureThread implements Runnable {
                                             // If debugWBTS is enabled, we make sure to read updated numbers
                                             if (bot.settings.debugWBTS) {
                                                 bot.browser.readScreen();
-                                                totalTS = getWorldBossTotalTS(bot.browser.getImg());
+                                                totalTS = getWorldBossTotalTS(bot.browser.getFrame());
                                                 // playersTS = getWorldBossPlayersTS(inviteCnt);
-                                                System.arraycopy(getWorldBossPlayersTS(inviteCnt, bot.browser.getImg()), 0, playersTS, 0, inviteCnt);
+                                                System.arraycopy(getWorldBossPlayersTS(inviteCnt, bot.browser.getFrame()), 0, playersTS, 0, inviteCnt);
                                             }
 
                                             if (totalTS > 0) {
@@ -2112,11 +2107,14 @@ public class AdventureThread implements Runnable {
         MarvinSegment left;
         int steps = 0;
 
+        // Area of the dialog window between the left and right arrows
+        final Bounds dialogBounds = new Bounds(100, 205, 700, 260);
+
         while (true) {
-            bot.browser.readScreen();
+            ScreenClassifier.Result screen = ScreenClassifier.fromScreen(bot.browser);
 
-            right = MarvinSegment.fromCue(BHBotUnity.cues.get("DialogRight"), bot.browser);
-            left = MarvinSegment.fromCue(BHBotUnity.cues.get("DialogLeft"), bot.browser);
+            right = screen.get("DialogRight");
+            left = screen.get("DialogLeft");
 
             //if we don't find either exit
             if (left == null && right == null) break;
@@ -2126,7 +2124,7 @@ public class AdventureThread implements Runnable {
             if (right != null) bot.browser.clickOnSeg(right);
 
             steps++;
-            Misc.sleep(Misc.Durations.SECOND);
+            bot.browser.waitForStable(dialogBounds, Misc.Durations.SECOND);
         }
 
         if (steps > 0)
@@ -2147,6 +2145,15 @@ public class AdventureThread implements Runnable {
     static int readResourceBarPercentage(MarvinSegment barLocator, int maxResourceCnt, int xOffset, int yOffset, Set<Color> barColors, BufferedImage barImgRead) {
         if (barLocator == null) return -1;
 
+        return readResourceBarPercentage(barLocator, maxResourceCnt, xOffset, yOffset, barColors, new Frame(barImgRead));
+    }
+
+    /**
+     * Same as readResourceBarPercentage on a BufferedImage, using the already decoded pixels of the frame.
+     */
+    static int readResourceBarPercentage(MarvinSegment barLocator, int maxResourceCnt, int xOffset, int yOffset, Set<Color> barColors, Frame barFrameRead) {
+        if (barLocator == null) return -1;
+
         int left = barLocator.x2 + xOffset;
         int top = barLocator.y1 + yOffset;
 
@@ -2155,7 +2162,7 @@ public class AdventureThread implements Runnable {
         // Bar length is 80 pixels
         for (int i = 0; i < 80; i++) {
             value = i;
-            Color col = new Color(barImgRead.getRGB(left + i, top));
+            Color col = new Color(barFrameRead.getRGB(left + i, top));
 
             if (!barColors.contains(col)) break;
         }
@@ -2418,7 +2425,7 @@ public class AdventureThread implements Runnable {
                         };
 
                         //close 'cleared' popup
-                        bot.browser.readScreen(Misc.Durations.SECOND); // The pop-up is bouncing let's wait for it to stabilize
+                        bot.browser.waitForStable(BHBotUnity.cues.get("ClearedRecap"), Misc.Durations.SECOND); // The pop-up is bouncing let's wait for it to stabilize
                         Cue cueTown = new Cue(BHBotUnity.cues.get("Town"), townBounds);
                         bot.browser.closePopupSecurely(BHBotUnity.cues.get("ClearedRecap"), cueTown);
 
@@ -2823,9 +2830,11 @@ public class AdventureThread implements Runnable {
             return;
         }
 
+        // Both popups are searched on the same frames, defeat has priority
+        MarvinSegment.CueMatch recap = MarvinSegment.waitForAny(Misc.Durations.SECOND, bot.browser, BHBotUnity.cues.get("DefeatRecap"), BHBotUnity.cues.get("VictoryRecap"));
+
         // if everyone dies autoRevive attempts to revive people on the defeat screen, this should prevent that
-        seg = MarvinSegment.fromCue(BHBotUnity.cues.get("DefeatRecap"), Misc.Durations.SECOND, bot.browser);
-        if (seg != null) {
+        if (recap != null && recap.is("DefeatRecap")) {
             BHBotUnity.logger.autorevive("Defeat screen, skipping revive check");
             setAutoOn(Misc.Durations.SECOND);
             bot.browser.readScreen(Misc.Durations.SECOND);
@@ -2833,8 +2842,7 @@ public class AdventureThread implements Runnable {
             return;
         }
 
-        seg = MarvinSegment.fromCue(BHBotUnity.cues.get("VictoryRecap"), 500, bot.browser);
-        if (seg != null) {
+        if (recap != null && recap.is("VictoryRecap")) {
             BHBotUnity.logger.autorevive("Victory popup, skipping revive check");
             setAutoOn(Misc.Durations.SECOND);
 
@@ -3257,10 +3265,10 @@ public class AdventureThread implements Runnable {
         bot.browser.readScreen();
         for (int i = 0; i <= 3; i++) {
             if (!bot.browser.isDoNotShareUrl()) {
-                Color col = new Color(bot.browser.getImg().getRGB(portalCheck[i].x, portalCheck[i].y));
+                Color col = new Color(bot.browser.getFrame().getRGB(portalCheck[i].x, portalCheck[i].y));
                 portalEnabled[i] = col.equals(colorCheck[i]);
             } else {
-                Color col = new Color(bot.browser.getImg().getRGB(portalCheck[i].x - 1, portalCheck[i].y - 3));
+                Color col = new Color(bot.browser.getFrame().getRGB(portalCheck[i].x - 1, portalCheck[i].y - 3));
                 portalEnabled[i] = col.equals(colorCheck[i]);
             }
 
@@ -3370,7 +3378,7 @@ public class AdventureThread implements Runnable {
         int desiredWB = desiredWorldBoss.getNumber();
 
         // we get the grey dots on the raid selection popup
-        List<MarvinSegment> wbDotsList = FindSubimage.findSubimage(bot.browser.getImg(), BHBotUnity.cues.get("cueRaidLevelEmpty").im, 1.0, true, false, 0, 0, 0, 0);
+        List<MarvinSegment> wbDotsList = FindSubimage.findSubimage(bot.browser.getFrame(), BHBotUnity.cues.get("cueRaidLevelEmpty").kernel, 1.0, true, false, 0, 0, 0, 0);
         // we update the number of unlocked raids
         wbUnlocked += wbDotsList.size();
 
@@ -3448,7 +3456,7 @@ public class AdventureThread implements Runnable {
 
         int raidUnlocked = 0;
         // we get the grey dots on the raid selection popup
-        List<MarvinSegment> raidDotsList = FindSubimage.findSubimage(bot.browser.getImg(), BHBotUnity.cues.get("cueRaidLevelEmpty").im, 1.0, true, false, 0, 0, 0, 0);
+        List<MarvinSegment> raidDotsList = FindSubimage.findSubimage(bot.browser.getFrame(), BHBotUnity.cues.get("cueRaidLevelEmpty").kernel, 1.0, true, false, 0, 0, 0, 0);
         // we update the number of unlocked raids
         raidUnlocked += raidDotsList.size();
 
@@ -3852,19 +3860,37 @@ public class AdventureThread implements Runnable {
      * @return The value of the read number or 0 if it was not possible to read the number
      */
     static int readNumFromImg(BufferedImage im, String numberPrefix, Set<Integer> intToSkip, boolean breakOnMatch, boolean logEmptyResults) {
+        // the image is decoded only once for all the prefixes
+        Frame frame = new Frame(im);
+
+        return readNumFromImg(reader -> reader.read(frame), () -> im, numberPrefix, intToSkip, breakOnMatch, logEmptyResults);
+    }
+
+    /**
+     * Same as readNumFromImg on a BufferedImage, for images converted using toBlackWhite. The image is read as a
+     * BinaryImage, so there is no need to call update on it.
+     */
+    static int readNumFromImg(MarvinImage im, String numberPrefix, Set<Integer> intToSkip, boolean breakOnMatch, boolean logEmptyResults) {
+        BinaryImage binary = BinaryImage.fromMarvinImage(im);
+        if (binary == null) {
+            im.update();
+            return readNumFromImg(im.getBufferedImage(), numberPrefix, intToSkip, breakOnMatch, logEmptyResults);
+        }
+
+        return readNumFromImg(binary, numberPrefix, intToSkip, breakOnMatch, logEmptyResults);
+    }
+
+    static int readNumFromImg(BinaryImage binary, String numberPrefix, Set<Integer> intToSkip, boolean breakOnMatch, boolean logEmptyResults) {
+        return readNumFromImg(reader -> reader.read(binary), binary::toBufferedImage, numberPrefix, intToSkip, breakOnMatch, logEmptyResults);
+    }
+
+    private static int readNumFromImg(Function<NumberReader, List<NumberReader.Glyph>> read, Supplier<BufferedImage> debugImg, String numberPrefix, Set<Integer> intToSkip, boolean breakOnMatch, boolean logEmptyResults) {
         // You can have multiple prefixes separated by a comma
         String[] prefixes = numberPrefix.split(",");
-        List<NumberInfo> nums = new ArrayList<>();
+        List<NumberReader.Glyph> nums = new ArrayList<>();
 
         for (String prefix: prefixes) {
-            for (int i = 9; i >= 0; i--) {
-                if (intToSkip.contains(i)) continue;
-                List<MarvinSegment> list = FindSubimage.findSubimage(im, BHBotUnity.cues.get(prefix + "" + i).im, 1.0, true, false, 0, 0, 0, 0);
-                //BHBot.logger.info("DEBUG difficulty detection: " + i + " - " + list.size());
-                for (MarvinSegment s : list) {
-                    nums.add(new NumberInfo(Integer.toString(i), s.x1));
-                }
-            }
+            nums.addAll(read.apply(NumberReader.forDigits(prefix, intToSkip, true)));
 
             // The current prefix is the correct one, so we do not check the remaining ones
             if (nums.size() > 0 && breakOnMatch) {
@@ -3873,9 +3899,7 @@ public class AdventureThread implements Runnable {
         }
 
         // order list horizontally:
-        nums = nums.stream()
-                .sorted(Comparator.comparing(NumberInfo::xPosition))
-                .collect(Collectors.toList());
+        nums.sort(Comparator.comparingInt(NumberReader.Glyph::x));
 
         int result = 0;
 
@@ -3887,6 +3911,7 @@ public class AdventureThread implements Runnable {
 
         if (logEmptyResults && (nums.size() == 0 || result == 0)) {
             BHBotUnity.logger.debug(Misc.getStackTrace());
+            BufferedImage im = debugImg.get();
             BHBotUnity.logger.debug("Empty number from readNumFromImg im = " + im + ", numberPrefix = " + numberPrefix + ", intToSkip = " + intToSkip);
             Misc.saveScreen("readNumFromImg-empty", "debug/readNumFromImg", true, im);
         }
@@ -3908,43 +3933,37 @@ public class AdventureThread implements Runnable {
      */
     @SuppressWarnings("SameParameterValue")
     int[] readNumRangeFromImg(BufferedImage im, String numberPrefix, HashSet<Integer> intToSkip, String rangeSeparatorName, String rangeSeparatorValue) {
+        return readNumRangeFromImg(reader -> reader.read(im), numberPrefix, intToSkip, rangeSeparatorName, rangeSeparatorValue);
+    }
 
-        List<NumberInfo> nums = new ArrayList<>();
+    /**
+     * Same as readNumRangeFromImg on a BufferedImage, there is no need to call update on the black and white image.
+     */
+    @SuppressWarnings("SameParameterValue")
+    int[] readNumRangeFromImg(MarvinImage im, String numberPrefix, HashSet<Integer> intToSkip, String rangeSeparatorName, String rangeSeparatorValue) {
+        return readNumRangeFromImg(reader -> reader.read(im), numberPrefix, intToSkip, rangeSeparatorName, rangeSeparatorValue);
+    }
 
-        for (int i = 0; i < 10; i++) {
-            if (intToSkip.contains(i)) continue;
-            List<MarvinSegment> list = FindSubimage.findSubimage(im, BHBotUnity.cues.get(numberPrefix + "" + i).im, 1.0, true, false, 0, 0, 0, 0);
-            //BHBot.logger.info("DEBUG difficulty detection: " + i + " - " + list.size());
-            for (MarvinSegment s : list) {
-                nums.add(new NumberInfo(Integer.toString(i), s.x1));
-            }
-        }
+    private int[] readNumRangeFromImg(Function<NumberReader, List<NumberReader.Glyph>> read, String numberPrefix, HashSet<Integer> intToSkip, String rangeSeparatorName, String rangeSeparatorValue) {
+
+        // Digits and separator are read together in a single pass
+        List<NumberReader.Glyph> nums = read.apply(NumberReader.forDigits(numberPrefix, intToSkip, false)
+                .addGlyph(numberPrefix + rangeSeparatorName, rangeSeparatorValue));
+
+        long separatorCnt = nums.stream().filter(glyph -> rangeSeparatorValue.equals(glyph.value())).count();
 
         // No numbers have been found
-        if (nums.size() == 0)
+        if (nums.size() == separatorCnt)
             return new int[]{}; // error
 
-        // We take care of the separator
-        List<MarvinSegment> list = FindSubimage.findSubimage(im, BHBotUnity.cues.get(numberPrefix + "" + rangeSeparatorName).im, 1.0, true, false, 0, 0, 0, 0);
-        //BHBot.logger.info("DEBUG difficulty detection: " + i + " - " + list.size());
-
-        if (list.size() == 0) {
+        if (separatorCnt == 0) {
             BHBotUnity.logger.error("No separator character found in readNumRangeFromImg!");
             return new int[]{};
-        } else if (list.size() > 1) {
+        } else if (separatorCnt > 1) {
             BHBotUnity.logger.error("More than one separator character found in readNumRangeFromImg!");
             return new int[]{};
         }
 
-        for (MarvinSegment s : list) {
-            nums.add(new NumberInfo(rangeSeparatorValue, s.x1));
-        }
-
-        // order list horizontally:
-        nums = nums.stream()
-                    .sorted(Comparator.comparing(NumberInfo::xPosition))
-                    .collect(Collectors.toList());
-
         StringBuilder result = new StringBuilder();
         nums.forEach(result::append);
 
@@ -3983,16 +4002,11 @@ public class AdventureThread implements Runnable {
         }
 
         // We get the  region with the difficulty number
-        BufferedImage numImg = bot.browser.getImg().getSubimage(seg.x1 + Misc.BoundsOffsets.Difficulty.x1, seg.y1 + Misc.BoundsOffsets.Difficulty.y1, Misc.BoundsOffsets.Difficulty.width, Misc.BoundsOffsets.Difficulty.height);
-
         // We transform it in B&W using available customMax
-        MarvinImage im = new MarvinImage(numImg, "PNG");
+        MarvinImage im = MarvinImage.view(bot.browser.getFrame(), seg.x1 + Misc.BoundsOffsets.Difficulty.x1, seg.y1 + Misc.BoundsOffsets.Difficulty.y1, Misc.BoundsOffsets.Difficulty.width, Misc.BoundsOffsets.Difficulty.height);
         im.toBlackWhite(110);
-        im.update();
 
-        BufferedImage imb = im.getBufferedImage();
-
-        return readNumFromImg(imb, "tg_diff_cost_win_11_", Set.of(), false, false);
+        return readNumFromImg(im, "tg_diff_cost_win_11_", Set.of(), false, false);
     }
 
     /* World boss reading and changing section */
@@ -4017,15 +4031,12 @@ public class AdventureThread implements Runnable {
             return 0; // error
         }
 
-        MarvinImage im = new MarvinImage(bot.browser.getImg().getSubimage(xOffset, yOffset, w, h));
+        MarvinImage im = MarvinImage.view(bot.browser.getFrame(), xOffset, yOffset, w, h);
 
         // make it white-gray (to facilitate cue recognition):
         im.toBlackWhite(new Color(25, 25, 25), new Color(255, 255, 255), 255);
-        im.update();
-
-        BufferedImage imb = im.getBufferedImage();
 
-        return readNumFromImg(imb, "wb_tier_", Set.of(), false, true);
+        return readNumFromImg(im, "wb_tier_", Set.of(), false, true);
     }
 
     /**
@@ -4050,10 +4061,9 @@ public class AdventureThread implements Runnable {
 
         // We detect what is the top available tier. This may be different based on player level and unlocked zones
         Bounds topTierBounds = Bounds.fromWidthHeight(409, 146, 27, 26);
-        MarvinImage topTierImg = new MarvinImage(bot.browser.getImg().getSubimage(topTierBounds.x1, topTierBounds.y1, topTierBounds.width, topTierBounds.height));
+        MarvinImage topTierImg = MarvinImage.view(bot.browser.getFrame(), topTierBounds.x1, topTierBounds.y1, topTierBounds.width, topTierBounds.height);
         topTierImg.toBlackWhite(new Color(25, 25, 25), new Color(255, 255, 255), 255);
-        topTierImg.update();
-        int topAvailableTier = readNumFromImg(topTierImg.getBufferedImage(), "wb_tier_button_", Set.of(), false, true);
+        int topAvailableTier = readNumFromImg(topTierImg, "wb_tier_button_", Set.of(), false, true);
 
         if (topAvailableTier == 0) {
             BHBotUnity.logger.error("Impossible to detect maximum available tier in World Boss");
@@ -4147,44 +4157,41 @@ public class AdventureThread implements Runnable {
      * Get the Total World Boss TS. This method assumes that the WB Lobby is opened and screen read is up to date with it
      *
      * @return The total TS found value, 0 if errors
-     * @param lobbyScreen The image to be used to read the WB Total TS
+     * @param lobbyScreen The frame to be used to read the WB Total TS
      */
-    private int getWorldBossTotalTS(BufferedImage lobbyScreen) {
+    private int getWorldBossTotalTS(Frame lobbyScreen) {
         final Bounds totalWBTS = Bounds.fromWidthHeight(602, 67, 88, 36);
-        MarvinImage totalTSImg = new MarvinImage(lobbyScreen.getSubimage(totalWBTS.x1, totalWBTS.y1, totalWBTS.width, totalWBTS.height));
+        MarvinImage totalTSImg = MarvinImage.view(lobbyScreen, totalWBTS.x1, totalWBTS.y1, totalWBTS.width, totalWBTS.height);
         totalTSImg.toBlackWhite(120);
-        totalTSImg.update();
-        BufferedImage totalTSSubImg = totalTSImg.getBufferedImage();
 
         /*if (bot.settings.debugWBTS) {
-            MarvinImage debugImg = new MarvinImage(lobbyScreen);
+            MarvinImage debugImg = MarvinImage.view(lobbyScreen);
             debugImg.drawRect(totalWBTS.x1, totalWBTS.y1, totalWBTS.width, totalWBTS.height, 2, Color.BLUE);
             debugImg.update();
             Misc.saveScreen("debug-total-ts", "wb-ts-debug", BHBot.includeMachineNameInScreenshots, debugImg.getBufferedImage());
         }*/
 
         // We start from 20 intentionally: as soon a match is found, readNumFromImg will stop checking the remaining prefixes
-        return readNumFromImg(totalTSSubImg, "wb_total_ts_20_,wb_total_ts_18_,wb_total_ts_16_", Set.of(), true, false);
+        return readNumFromImg(totalTSImg, "wb_total_ts_20_,wb_total_ts_18_,wb_total_ts_16_", Set.of(), true, false);
     }
 
     /**
      * Get the TS for each World Boss lobby member
      *
      * @param inviteCnt The lobby size
-     * @param lobbyScreen The image to be used to read the WB Total TS
+     * @param lobbyScreen The frame to be used to read the WB Total TS
      * @return An array of int with TS for each party member
      */
-    private int[] getWorldBossPlayersTS(int inviteCnt, BufferedImage lobbyScreen) {
+    private int[] getWorldBossPlayersTS(int inviteCnt, Frame lobbyScreen) {
         int[] results = new int[inviteCnt];
         final Bounds TSBound = Bounds.fromWidthHeight(184, 244, 84, 18);
 
         // We convert the lobby screen to black and white
-        MarvinImage toBlackAndWhite = new MarvinImage(lobbyScreen);
+        MarvinImage toBlackAndWhite = MarvinImage.view(lobbyScreen);
         toBlackAndWhite.toBlackWhite(120);
-        toBlackAndWhite.update();
 
-        // Black and white BufferedImage
-        BufferedImage BlackAndWhiteTS = toBlackAndWhite.getBufferedImage();
+        // Black and white image, one bit for each pixel
+        BinaryImage BlackAndWhiteTS = BinaryImage.fromMarvinImage(toBlackAndWhite);
 
         // Only used if debugWBTS is true
         // MarvinImage debugWTSImg = new MarvinImage(BlackAndWhiteTS);
@@ -4192,7 +4199,7 @@ public class AdventureThread implements Runnable {
         for (int partyMemberPos = 0; partyMemberPos < inviteCnt; partyMemberPos++) {
             final int y = TSBound.y1 + (54 * partyMemberPos);
 
-            BufferedImage tsSubImg = BlackAndWhiteTS.getSubimage(TSBound.x1, y, TSBound.width, TSBound.height);
+            BinaryImage tsSubImg = BlackAndWhiteTS.getSubimage(TSBound.x1, y, TSBound.width, TSBound.height);
             int playerTS = readNumFromImg(tsSubImg, "wb_player_ts_", Set.of(), false, false);
             results[partyMemberPos] = playerTS;
 
@@ -4324,12 +4331,10 @@ public class AdventureThread implements Runnable {
 
             // We use rangePos to read the right difficulty range
             int posOffset = rangePos * yOffset;
-            BufferedImage topRangeImg = bot.browser.getImg().getSubimage(difficultyRangeBounds.x1, difficultyRangeBounds.y1 + posOffset, difficultyRangeBounds.width, difficultyRangeBounds.height);
-            MarvinImage im = new MarvinImage(topRangeImg);
+            MarvinImage im = MarvinImage.view(bot.browser.getFrame(), difficultyRangeBounds.x1, difficultyRangeBounds.y1 + posOffset, difficultyRangeBounds.width, difficultyRangeBounds.height);
             im.toBlackWhite(110);
-            im.update();
 
-            int[] diffRange = readNumRangeFromImg(im.getBufferedImage(), "tg_diff_range_16_", new HashSet<>(), "hyphen", "-");
+            int[] diffRange = readNumRangeFromImg(im, "tg_diff_range_16_", new HashSet<>(), "hyphen", "-");
             BHBotUnity.logger.debug("Detected difficulty range: " + Arrays.toString(diffRange));
             if (diffRange.length != 2) {
                 BHBotUnity.logger.error("It was impossible to read the top difficulty range");
@@ -4368,22 +4373,18 @@ public class AdventureThread implements Runnable {
                  * */
 
                 // Top most difficulty value
-                BufferedImage topLvlBImg = bot.browser.getImg().getSubimage(topLvlBounds.x1, topLvlBounds.y1, topLvlBounds.width, topLvlBounds.height);
-                MarvinImage topLvlMImg = new MarvinImage(topLvlBImg);
+                MarvinImage topLvlMImg = MarvinImage.view(bot.browser.getFrame(), topLvlBounds.x1, topLvlBounds.y1, topLvlBounds.width, topLvlBounds.height);
                 topLvlMImg.toBlackWhite(bwTreshold);
-                topLvlMImg.update();
-                int topLvl = readNumFromImg(topLvlMImg.getBufferedImage(), "tg_diff_selection_17_", Set.of(), false, false);
+                int topLvl = readNumFromImg(topLvlMImg, "tg_diff_selection_17_", Set.of(), false, false);
                 if (topLvl == 0) {
                     BHBotUnity.logger.error("Impossible to read difficulty range top level.");
                     return 0;
                 }
 
                 // Second difficulty value
-                BufferedImage secondLvlBImg = bot.browser.getImg().getSubimage(topLvlBounds.x1, topLvlBounds.y1 + yOffset, topLvlBounds.width, topLvlBounds.height);
-                MarvinImage secondLvlMImg = new MarvinImage(secondLvlBImg);
+                MarvinImage secondLvlMImg = MarvinImage.view(bot.browser.getFrame(), topLvlBounds.x1, topLvlBounds.y1 + yOffset, topLvlBounds.width, topLvlBounds.height);
                 secondLvlMImg.toBlackWhite(bwTreshold);
-                secondLvlMImg.update();
-                int secondLvl = readNumFromImg(secondLvlMImg.getBufferedImage(), "tg_diff_selection_17_", Set.of(), false, false);
+                int secondLvl = readNumFromImg(secondLvlMImg, "tg_diff_selection_17_", Set.of(), false, false);
                 if (secondLvl == 0) {
                     BHBotUnity.logger.error("Impossible to read difficulty range second level.");
                     return 0;
@@ -4477,7 +4478,7 @@ public class AdventureThread implements Runnable {
         }
 
         // the first (upper most) of the 5 buttons in the drop-down menu. Note that every while a "tier x" is written bellow it, so text is higher up (hence we need to scan a larger area)
-        MarvinImage subm = new MarvinImage(bot.browser.getImg().getSubimage(350, 140, 80, 35));
+        MarvinImage subm = MarvinImage.view(bot.browser.getFrame(), 350, 140, 80, 35);
         subm.toBlackWhite(110);
         subm.update();
         BufferedImage sub = subm.getBufferedImage();
@@ -4566,16 +4567,11 @@ public class AdventureThread implements Runnable {
         final int xOffset = 3, yOffset = 41, w = 31, h = 22;
 
         // We get the  region with the cost number
-        BufferedImage numImg = bot.browser.getImg().getSubimage(seg.x1 + Misc.BoundsOffsets.Cost.x1, seg.y1 + Misc.BoundsOffsets.Cost.y1, Misc.BoundsOffsets.Cost.width, Misc.BoundsOffsets.Cost.height);
-
         // We transform it in B&W using available customMax
-        MarvinImage im = new MarvinImage(numImg, "PNG");
+        MarvinImage im = MarvinImage.view(bot.browser.getFrame(), seg.x1 + Misc.BoundsOffsets.Cost.x1, seg.y1 + Misc.BoundsOffsets.Cost.y1, Misc.BoundsOffsets.Cost.width, Misc.BoundsOffsets.Cost.height);
         im.toBlackWhite(110);
-        im.update();
 
-        BufferedImage imb = im.getBufferedImage();
-
-        return readNumFromImg(imb, "tg_diff_cost_win_11_", Set.of(0, 6, 7, 8, 9), false, false);
+        return readNumFromImg(im, "tg_diff_cost_win_11_", Set.of(0, 6, 7, 8, 9), false, false);
     }
 
     /**
@@ -5314,7 +5310,7 @@ public class AdventureThread implements Runnable {
 
             for (Map.Entry<String, Cue> item : itemTier.entrySet()) {
                 if (bot.settings.poNotifyDrop.contains(item.getKey()) || bot.settings.discordNotifyDrop.contains(item.getKey())) {
-                    seg = FindSubimage.findImage(victoryPopUpImg, item.getValue().im, victoryDropArea.x1, victoryDropArea.y1, victoryDropArea.x2, victoryDropArea.y2);
+                    seg = FindSubimage.findImage(victoryPopUpImg, item.getValue().kernel, victoryDropArea.x1, victoryDropArea.y1, victoryDropArea.x2, victoryDropArea.y2);
                     if (seg != null) {
                         // so we don't get legendary crafting materials in raids triggering handleLoot
                         if ((item.getKey().equals("l")) && (restrictedCues(victoryPopUpImg, seg.getBounds()))) return;
@@ -5624,7 +5620,7 @@ public class AdventureThread implements Runnable {
         restrictedCues.put("Hyper Shard", BHBotUnity.cues.get("Material_R2"));
 
         for (Map.Entry<String, Cue> cue : restrictedCues.entrySet()) {
-            seg = FindSubimage.findImage(victoryPopUpImg, cue.getValue().im, foundArea.x1, foundArea.y1, foundArea.x2, foundArea.y2);
+            seg = FindSubimage.findImage(victoryPopUpImg, cue.getValue().kernel, foundArea.x1, foundArea.y1, foundArea.x2, foundArea.y2);
             if (seg != null) {
                 BHBotUnity.logger.debug("Legendary: " + cue.getKey() + " found, skipping handleLoot");
                 return true;
@@ -5658,7 +5654,7 @@ public class AdventureThread implements Runnable {
         allowedCues.put("Scarlarg Skin", BHBotUnity.cues.get("ScarlargSkin"));
 
         for (Map.Entry<String, Cue> cue : allowedCues.entrySet()) {
-            seg = FindSubimage.findImage(victoryPopUpImg, cue.getValue().im, foundArea.x1, foundArea.y1, foundArea.x2, foundArea.y2);
+            seg = FindSubimage.findImage(victoryPopUpImg, cue.getValue().kernel, foundArea.x1, foundArea.y1, foundArea.x2, foundArea.y2);
             if (seg != null) {
                 BHBotUnity.logger.debug(cue.getKey() + " found!");
                 return true;
@@ -5683,7 +5679,7 @@ public class AdventureThread implements Runnable {
             if (!lastSavedName.equals(finalFileName)) {
 
                 // We convert the image to B&W before we save it, so troubleshooting will be faster.
-                MarvinImage toBlackAndWhite = new MarvinImage(bot.browser.getImg());
+                MarvinImage toBlackAndWhite = MarvinImage.view(bot.browser.getFrame());
                 toBlackAndWhite.toBlackWhite(120);
                 toBlackAndWhite.update();
 
@@ -5696,18 +5692,41 @@ public class AdventureThread implements Runnable {
     }
 
     void setAutoOff(int timeout) {
-        MarvinSegment autoSeg = MarvinSegment.fromCue(BHBotUnity.cues.get("AutoOn"), timeout, bot.browser);
-
-        if (autoSeg != null) {
-            bot.browser.clickOnSeg(autoSeg);
-        }
+        toggleAuto(timeout, BHBotUnity.cues.get("AutoOn"), BHBotUnity.cues.get("AutoOff"));
     }
 
     void setAutoOn(int timeout) {
-        MarvinSegment autoSeg = MarvinSegment.fromCue(BHBotUnity.cues.get("AutoOff"), timeout, bot.browser);
+        toggleAuto(timeout, BHBotUnity.cues.get("AutoOff"), BHBotUnity.cues.get("AutoOn"));
+    }
+
+    /**
+     * Clicks the auto button when it shows clickCue. Both cues are searched, so that we don't wait for the whole timeout
+     * when auto is already in the requested state, but stateCue is only trusted on frames captured after the last input:
+     * right after a click the button may not be redrawn yet.
+     *
+     * @param timeout  how long to wait for clickCue
+     * @param clickCue the cue of the button to click
+     * @param stateCue the cue shown when auto is already in the requested state
+     */
+    private void toggleAuto(int timeout, Cue clickCue, Cue stateCue) {
+        long timer = Misc.getTime();
 
-        if (autoSeg != null) {
-            bot.browser.clickOnSeg(autoSeg);
+        while (true) {
+            int remaining = (int) Math.max(0, timeout - (Misc.getTime() - timer));
+            MarvinSegment.CueMatch autoMatch = MarvinSegment.waitForAny(remaining, bot.browser, clickCue, stateCue);
+
+            if (autoMatch == null) return;
+
+            if (autoMatch.is(clickCue.name)) {
+                bot.browser.clickOnSeg(autoMatch.seg());
+                return;
+            }
+
+            // The button was drawn after the last input, so auto is really in the requested state
+            if (bot.browser.getFrame().timestamp > bot.browser.getLastInputTime()) return;
+
+            if ((Misc.getTime() - timer) >= timeout) return;
+            Misc.sleep(Misc.Durations.SECOND / 10);
         }
     }
 
@@ -5769,9 +5788,7 @@ public class AdventureThread implements Runnable {
         BHBotUnity.logger.debug("Suggested Bounds: " + suggestedBounds.getJavaCode(true, false));
         BHBotUnity.logger.debug("Suggested Bounds.fromWidthHeight: " + suggestedBounds.getJavaCode(true, true));
 
-        BufferedImage numImg = bot.browser.getImg().getSubimage(seg.x1 + Misc.BoundsOffsets.Difficulty.x1, seg.y1 + Misc.BoundsOffsets.Difficulty.y1, Misc.BoundsOffsets.Difficulty.width, Misc.BoundsOffsets.Difficulty.height);
-
-        MarvinImage toBlackAndWhite = new MarvinImage(numImg, "PNG");
+        MarvinImage toBlackAndWhite = MarvinImage.view(bot.browser.getFrame(), seg.x1 + Misc.BoundsOffsets.Difficulty.x1, seg.y1 + Misc.BoundsOffsets.Difficulty.y1, Misc.BoundsOffsets.Difficulty.width, Misc.BoundsOffsets.Difficulty.height);
         toBlackAndWhite.toBlackWhite(110);
         toBlackAndWhite.update();
 
@@ -5804,10 +5821,8 @@ public class AdventureThread implements Runnable {
         BHBotUnity.logger.debug("Suggested Bounds.fromWidthHeight: " + suggestedBounds.getJavaCode(true, true));
 
         // We get the  region with the cost number
-        BufferedImage numImg = bot.browser.getImg().getSubimage(seg.x1 + Misc.BoundsOffsets.Cost.x1, seg.y1 + Misc.BoundsOffsets.Cost.y1, Misc.BoundsOffsets.Cost.width, Misc.BoundsOffsets.Cost.height);
-
         // We transform it in B&W using available customMax
-        MarvinImage im = new MarvinImage(numImg, "PNG");
+        MarvinImage im = MarvinImage.view(bot.browser.getFrame(), seg.x1 + Misc.BoundsOffsets.Cost.x1, seg.y1 + Misc.BoundsOffsets.Cost.y1, Misc.BoundsOffsets.Cost.width, Misc.BoundsOffsets.Cost.height);
         im.toBlackWhite(110);
         im.update();
 
@@ -147,7 +147,7 @@ public class AutoShrineManager {
                     disableIgnoreShrines = true;
                     ignoreShrineMsg = bot.settings.battleDelay + "s since last encounter, disabling ignore shrines";
                 } else if (guildButtonSeg != null && bot.settings.positionDelay > 0
-                        && bot.adventure.positionChecker.isSamePosition(bot.browser.getImg(), bot.settings.positionDelay)) {
+                        && bot.adventure.positionChecker.isSamePosition(bot.browser.getFrame(), bot.settings.positionDelay)) {
                     disableIgnoreShrines = true;
                     ignoreShrineMsg = "Position has not changed for " + bot.settings.positionDelay + " seconds, disabling ignore shrines";
                 }
@@ -170,6 +170,10 @@ public class BHBotUnity {
 
         // we need to initialize the CueManager after that we started log4j, so that the cue manager can use it to log
         cues = new CueManager();
+        FindSubimage.setVectorBackend(bot.settings.useVectorMatching);
+        FindSubimage.setSearchThreads(bot.settings.cueSearchThreads);
+        CueHints.setEnabled(bot.settings.useCueHints);
+        LearnedBounds.setEnabled(bot.settings.learnCueBounds);
 
         // As we have initialized the cues successfully we also build familiar MD5 details
         EncounterManager.buildMD5();
@@ -373,6 +377,9 @@ public class BHBotUnity {
         }
 
         if (browser != null) browser.close();
+
+        // the learned bounds are saved with a delay, so pending changes are written now
+        LearnedBounds.flush();
     }
 
     private void processCommand(String c) {
@@ -468,7 +475,7 @@ public class BHBotUnity {
 
                         if (topChoiceDS != null) {
                             // B&W Conversion
-                            MarvinImage bwDSImg = new MarvinImage(browser.getImg());
+                            MarvinImage bwDSImg = MarvinImage.view(browser.getFrame());
                             bwDSImg.toBlackWhite(110);
                             bwDSImg.update();
                             BufferedImage bwDS = bwDSImg.getBufferedImage();
@@ -581,12 +588,10 @@ public class BHBotUnity {
 
                 for (int i = 0; i < 5; i++) {
                     int posOffset = i * yOffset;
-                    BufferedImage topRangeImg = browser.getImg().getSubimage(difficultyRangeBounds.x1, difficultyRangeBounds.y1 + posOffset, difficultyRangeBounds.width, difficultyRangeBounds.height);
-                    MarvinImage im = new MarvinImage(topRangeImg);
+                    MarvinImage im = MarvinImage.view(browser.getFrame(), difficultyRangeBounds.x1, difficultyRangeBounds.y1 + posOffset, difficultyRangeBounds.width, difficultyRangeBounds.height);
                     im.toBlackWhite(110);
-                    im.update();
 
-                    int[] diffRange = adventure.readNumRangeFromImg(im.getBufferedImage(), "tg_diff_range_16_", new HashSet<>(), "hyphen", "-");
+                    int[] diffRange = adventure.readNumRangeFromImg(im, "tg_diff_range_16_", new HashSet<>(), "hyphen", "-");
                     BHBotUnity.logger.debug("Detected difficulty range: " + Arrays.toString(diffRange));
                 }
 
@@ -598,11 +603,9 @@ public class BHBotUnity {
                 final int diffOffset = 60;
 
                 for (int i = 0; i < 5; i++) {
-                    BufferedImage topLvlBImg = browser.getImg().getSubimage(topLvlBounds.x1, topLvlBounds.y1 + (diffOffset * i), topLvlBounds.width, topLvlBounds.height);
-                    MarvinImage topLvlMImg = new MarvinImage(topLvlBImg);
+                    MarvinImage topLvlMImg = MarvinImage.view(browser.getFrame(), topLvlBounds.x1, topLvlBounds.y1 + (diffOffset * i), topLvlBounds.width, topLvlBounds.height);
                     topLvlMImg.toBlackWhite(110);
-                    topLvlMImg.update();
-                    int diffSel = AdventureThread.readNumFromImg(topLvlMImg.getBufferedImage(), "tg_diff_selection_17_", Set.of(), false, false);
+                    int diffSel = AdventureThread.readNumFromImg(topLvlMImg, "tg_diff_selection_17_", Set.of(), false, false);
                     BHBotUnity.logger.debug("Detected difficulty selection: " + diffSel);
                 }
                 break;
@@ -674,10 +677,16 @@ public class BHBotUnity {
                 }
 
                 switch (params[1]) {
+                    case "cue-hints":
+                        CueHints.printStats();
+                        break;
                     case "config-file":
                         BHBotUnity.logger.info("Initial configuration file: " + Settings.initialConfigurationFile);
                         BHBotUnity.logger.info("Current configuration file: " + Settings.configurationFile);
                         break;
+                    case "detection-memo":
+                        DetectionMemo.printStats();
+                        break;
                     case "familiars":
                     case "familiar":
                     case "fam":
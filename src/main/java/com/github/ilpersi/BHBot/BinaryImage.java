@@ -0,0 +1,154 @@
+package com.github.ilpersi.BHBot;
+
+import java.awt.image.BufferedImage;
+
+/**
+ * A black and white image stored using one bit for each pixel. Each row is packed in longs, so that 64 pixels of the
+ * image can be compared with a BinaryKernel using a single XOR and Long.bitCount.
+ * <p>
+ * Set bits are white pixels. The two colors of the original image are kept, so that cue kernels can be converted to
+ * the same palette.
+ */
+class BinaryImage {
+
+    final int width;
+    final int height;
+    final int wordsPerRow;
+
+    // Row-major bits, pixel x of row y is bit (x % 64) of bits[(y * wordsPerRow) + (x / 64)]
+    final long[] bits;
+
+    // Colors of the black and white pixels in the original image, as 24 bit RGB values
+    final int blackRGB;
+    final int whiteRGB;
+
+    private BinaryImage(int width, int height, int blackRGB, int whiteRGB) {
+        this.width = width;
+        this.height = height;
+        this.wordsPerRow = (width + Long.SIZE - 1) / Long.SIZE;
+        this.bits = new long[wordsPerRow * height];
+        this.blackRGB = blackRGB;
+        this.whiteRGB = whiteRGB;
+    }
+
+    /**
+     * Converts a MarvinImage after toBlackWhite: binary images are read from arrBinaryColor, RGB images must contain
+     * two colors at most.
+     *
+     * @param im the black and white image
+     * @return the binary image or null if im has more than two colors
+     */
+    static BinaryImage fromMarvinImage(MarvinImage im) {
+        if (im.getColorModel() != MarvinImage.COLOR_MODEL_BINARY) {
+            return fromPixels(im.getIntColorArray(), im.getWidth(), im.getHeight());
+        }
+
+        // in Marvin binary images, true is black
+        boolean[] binaryColor = im.getBinaryColorArray();
+        BinaryImage binary = new BinaryImage(im.getWidth(), im.getHeight(), 0x000000, 0xFFFFFF);
+        for (int y = 0; y < binary.height; y++) {
+            for (int x = 0; x < binary.width; x++) {
+                if (!binaryColor[(y * binary.width) + x]) binary.set(x, y);
+            }
+        }
+        return binary;
+    }
+
+    /**
+     * @param pixels row-major pixels using the default RGB color model
+     * @param width  width of the image
+     * @param height height of the image
+     * @return the binary image or null if the pixels have more than two colors
+     */
+    static BinaryImage fromPixels(int[] pixels, int width, int height) {
+        int color1 = pixels.length > 0 ? pixels[0] & 0xFFFFFF : 0;
+        int color2 = color1;
+
+        for (int i = 1; i < width * height; i++) {
+            int color = pixels[i] & 0xFFFFFF;
+            if (color == color1 || color == color2) continue;
+            if (color1 != color2) return null;
+            color2 = color;
+        }
+
+        boolean color1Black = channelSum(color1) <= channelSum(color2);
+        int black = color1Black ? color1 : color2;
+        int white = color1Black ? color2 : color1;
+
+        BinaryImage binary = new BinaryImage(width, height, black, white);
+        if (black == white) return binary;
+
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                if ((pixels[(y * width) + x] & 0xFFFFFF) == white) binary.set(x, y);
+            }
+        }
+        return binary;
+    }
+
+    private void set(int x, int y) {
+        bits[(y * wordsPerRow) + (x >>> 6)] |= 1L << x;
+    }
+
+    boolean isWhite(int x, int y) {
+        return (bits[(y * wordsPerRow) + (x >>> 6)] & (1L << x)) != 0;
+    }
+
+    /**
+     * @param x the first pixel of the window
+     * @param y the row of the window
+     * @return the 64 pixels of row y starting from x, pixels outside the image are black
+     */
+    long window(int x, int y) {
+        int word = (y * wordsPerRow) + (x >>> 6);
+        int shift = x & 63;
+
+        long window = bits[word] >>> shift;
+        if (shift != 0 && (x >>> 6) + 1 < wordsPerRow) window |= bits[word + 1] << (Long.SIZE - shift);
+        return window;
+    }
+
+    /**
+     * @return a copy of the given region of the image
+     */
+    BinaryImage getSubimage(int x, int y, int w, int h) {
+        BinaryImage sub = new BinaryImage(w, h, blackRGB, whiteRGB);
+        for (int row = 0; row < h; row++) {
+            for (int word = 0; word < sub.wordsPerRow; word++) {
+                long bits = window(x + (word * Long.SIZE), y + row);
+
+                // the last word must not contain pixels outside the region
+                int remaining = w - (word * Long.SIZE);
+                if (remaining < Long.SIZE) bits &= (1L << remaining) - 1;
+                sub.bits[(row * sub.wordsPerRow) + word] = bits;
+            }
+        }
+        return sub;
+    }
+
+    /**
+     * @return the pixels of the image using the default RGB color model
+     */
+    int[] toRGB() {
+        int[] rgb = new int[width * height];
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                rgb[(y * width) + x] = 0xFF000000 | (isWhite(x, y) ? whiteRGB : blackRGB);
+            }
+        }
+        return rgb;
+    }
+
+    /**
+     * @return a new image with the same pixels, used for debug purposes
+     */
+    BufferedImage toBufferedImage() {
+        BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        image.setRGB(0, 0, width, height, toRGB(), 0, width);
+        return image;
+    }
+
+    private static int channelSum(int pixel) {
+        return ((pixel >> 16) & 0xff) + ((pixel >> 8) & 0xff) + (pixel & 0xff);
+    }
+}
@@ -0,0 +1,104 @@
+package com.github.ilpersi.BHBot;
+
+/**
+ * The variant of a CueKernel used to search a BinaryImage. Each opaque pixel of the cue must be close (using the
+ * default match tolerance) to exactly one of the two colors of the image, so that the expected color can be stored as
+ * a single bit. Transparent pixels are excluded using a mask.
+ * <p>
+ * A kernel row is compared with the image 64 pixels at a time: ((window XOR values) AND mask) has a set bit for each
+ * mismatching pixel, so a candidate position is rejected as soon as one of these words is not zero.
+ */
+class BinaryKernel {
+
+    final int width;
+    final int height;
+    final int wordsPerRow;
+
+    // Expected bits and opaque mask for each row, with the same layout of BinaryImage
+    private final long[] values;
+    private final long[] mask;
+
+    // Palette of the images this kernel was built for
+    final int blackRGB;
+    final int whiteRGB;
+
+    // Columns and rows (up to the 64th) containing pixels that must be white
+    final long whiteColumns;
+    final long whiteRows;
+
+    private BinaryKernel(int width, int height, long[] values, long[] mask, int blackRGB, int whiteRGB, long whiteColumns, long whiteRows) {
+        this.width = width;
+        this.height = height;
+        this.wordsPerRow = (width + Long.SIZE - 1) / Long.SIZE;
+        this.values = values;
+        this.mask = mask;
+        this.blackRGB = blackRGB;
+        this.whiteRGB = whiteRGB;
+        this.whiteColumns = whiteColumns;
+        this.whiteRows = whiteRows;
+    }
+
+    /**
+     * @param kernel   the cue kernel
+     * @param blackRGB the black color of the images to search
+     * @param whiteRGB the white color of the images to search
+     * @return the binary kernel, values is null when the cue has pixels that can't be represented with the palette
+     */
+    static BinaryKernel fromKernel(CueKernel kernel, int blackRGB, int whiteRGB) {
+        int wordsPerRow = (kernel.width + Long.SIZE - 1) / Long.SIZE;
+        long[] values = new long[wordsPerRow * kernel.height];
+        long[] mask = new long[wordsPerRow * kernel.height];
+        long whiteColumns = 0, whiteRows = 0;
+
+        for (int i = 0; i < kernel.opaqueX.length; i++) {
+            boolean black = isClose(kernel, i, blackRGB);
+            boolean white = isClose(kernel, i, whiteRGB);
+            if (black == white) {
+                return new BinaryKernel(kernel.width, kernel.height, null, null, blackRGB, whiteRGB, 0, 0);
+            }
+
+            int x = kernel.opaqueX[i], y = kernel.opaqueY[i];
+            int word = (y * wordsPerRow) + (x >>> 6);
+            mask[word] |= 1L << x;
+            if (white) {
+                values[word] |= 1L << x;
+                if (x < Long.SIZE) whiteColumns |= 1L << x;
+                if (y < Long.SIZE) whiteRows |= 1L << y;
+            }
+        }
+
+        return new BinaryKernel(kernel.width, kernel.height, values, mask, blackRGB, whiteRGB, whiteColumns, whiteRows);
+    }
+
+    /**
+     * @return true if all the pixels of the cue can be represented with the palette
+     */
+    boolean isAvailable() {
+        return values != null;
+    }
+
+    /**
+     * The kernel must be fully inside the image.
+     *
+     * @param image the image to search
+     * @param x     left side of the candidate position
+     * @param y     top side of the candidate position
+     * @return true if all the opaque pixels of the kernel match the image
+     */
+    boolean matchesAt(BinaryImage image, int x, int y) {
+        for (int row = 0; row < height; row++) {
+            for (int word = 0; word < wordsPerRow; word++) {
+                int idx = (row * wordsPerRow) + word;
+                if (((image.window(x + (word * Long.SIZE), y + row) ^ values[idx]) & mask[idx]) != 0) return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean isClose(CueKernel kernel, int i, int rgb) {
+        int tolerance = MatchProfile.DEFAULT.tolerance;
+        return Math.abs(kernel.red[i] - ((rgb >> 16) & 0xff)) <= tolerance
+                && Math.abs(kernel.green[i] - ((rgb >> 8) & 0xff)) <= tolerance
+                && Math.abs(kernel.blue[i] - (rgb & 0xff)) <= tolerance;
+    }
+}
@@ -2,8 +2,15 @@ package com.github.ilpersi.BHBot;
 
 import java.awt.image.BufferedImage;
 import java.util.ArrayList;
+import java.util.Map;
 
 public class BlockerThread implements Runnable {
+    // Maximum time to wait for a frame captured by AdventureThread before reading the screen
+    private static final int BLOCKER_FRAME_WAIT = 250;
+
+    // Outcome of the blocker handlers: once a popup is dismissed, the other detections of the tick are outdated
+    private enum HandlerResult {NOT_FOUND, DISMISSED, ERROR}
+
     BHBotUnity bot;
 
     BlockerThread(BHBotUnity bot) {
@@ -45,15 +52,18 @@ public class BlockerThread implements Runnable {
                     continue;
                 }
 
-                bot.browser.readScreen();
+                // Blockers are searched on the frames captured by AdventureThread, when it is reading the screen
+                bot.browser.awaitScreen(BLOCKER_FRAME_WAIT);
 
                 bot.notificationManager.sendAliveNotification();
 
                 bot.browser.manageLogin();
 
+                // All the blockers are detected on the same frame, and only the handler of the popup on top is run
+                ScreenClassifier.Result screen = ScreenClassifier.classify(bot.browser.getFrame(), bot.browser);
+
                 //region Unable to Connect
-                seg = MarvinSegment.fromCue(BHBotUnity.cues.get("UnableToConnect"), bot.browser);
-                if (seg != null) {
+                if (screen.is(ScreenClassifier.Screen.UNABLE_TO_CONNECT)) {
                     BHBotUnity.logger.info("'Unable to connect' dialog detected. Reconnecting...");
                     //noinspection DuplicatedCode
                     seg = MarvinSegment.fromCue(BHBotUnity.cues.get("Reconnect"), 5 * Misc.Durations.SECOND, bot.browser);
@@ -66,8 +76,7 @@ public class BlockerThread implements Runnable {
 
                 //region Maintenance
                 // check for "Bit Heroes is currently down for maintenance. Please check back shortly!" window:
-                seg = MarvinSegment.fromCue(BHBotUnity.cues.get("Maintenance"), bot.browser);
-                if (seg != null) {
+                if (screen.is(ScreenClassifier.Screen.MAINTENANCE)) {
                     seg = MarvinSegment.fromCue(BHBotUnity.cues.get("Reconnect"), 5 * Misc.Durations.SECOND, bot.browser);
                     bot.browser.clickOnSeg(seg);
                     BHBotUnity.logger.info("Maintenance dialog dismissed.");
@@ -77,13 +86,10 @@ public class BlockerThread implements Runnable {
                 }
                 //endregion
 
-                MarvinSegment uhoh = MarvinSegment.fromCue(BHBotUnity.cues.get("UhOh"), bot.browser);
-                if (uhoh != null) {
+                if (screen.get("UhOh") != null) {
                     //region You have been disconnected / Connecting to Server
                     // check for "You have been disconnected" dialog:
-                    MarvinSegment dc = MarvinSegment.fromCue(BHBotUnity.cues.get("Disconnected"), bot.browser);
-                    MarvinSegment con = MarvinSegment.fromCue(BHBotUnity.cues.get("Connecting"), bot.browser);
-                    if (dc != null || con != null) {
+                    if (screen.is(ScreenClassifier.Screen.DISCONNECTED)) {
                         if (bot.scheduler.isUserInteracting || bot.scheduler.dismissReconnectOnNextIteration) {
                             bot.scheduler.isUserInteracting = false;
                             bot.scheduler.dismissReconnectOnNextIteration = false;
@@ -104,8 +110,7 @@ public class BlockerThread implements Runnable {
                     //endregion
 
                     //region Not In A Guild
-                    MarvinSegment notInAGuildSeg = MarvinSegment.fromCue(BHBotUnity.cues.get("NotInAGuild"), bot.browser);
-                    if (notInAGuildSeg != null) {
+                    if (screen.is(ScreenClassifier.Screen.NOT_IN_A_GUILD)) {
                         seg = MarvinSegment.fromCue(BHBotUnity.cues.get("Close"), 2 * Misc.Durations.SECOND, bot.browser);
                         if (seg != null) {
                             BHBotUnity.logger.info("Not in a guild popup dismissed.");
@@ -113,6 +118,7 @@ public class BlockerThread implements Runnable {
                         } else {
                             BHBotUnity.logger.debug("Impossible to find the close button for the 'Not in a guild' popup.");
                         }
+                        continue;
                     }
                     //endregion
 
@@ -123,9 +129,8 @@ public class BlockerThread implements Runnable {
 
                 //region New update required
                 // check for "There is a new update required to play" and click on "Reload" button:
-                seg = MarvinSegment.fromCue(BHBotUnity.cues.get("Reload"), bot.browser);
-                if (seg != null) {
-                    bot.browser.clickOnSeg(seg);
+                if (screen.is(ScreenClassifier.Screen.RELOAD)) {
+                    bot.browser.clickOnSeg(screen.get("Reload"));
                     BHBotUnity.logger.info("Update dialog dismissed.");
                     bot.browser.readScreen(Misc.Durations.SECOND);
                     bot.setState(BHBotUnity.State.Loading);
@@ -135,8 +140,7 @@ public class BlockerThread implements Runnable {
 
                 // region Are You There?
                 // check for "Are you still there?" popup:
-                seg = MarvinSegment.fromCue(BHBotUnity.cues.get("AreYouThere"), bot.browser);
-                if (seg != null) {
+                if (screen.is(ScreenClassifier.Screen.ARE_YOU_THERE)) {
                     bot.scheduler.restoreIdleTime();
                     seg = MarvinSegment.fromCue(BHBotUnity.cues.get("Yes"), 2 * Misc.Durations.SECOND, bot.browser);
                     if (seg != null) {
@@ -153,8 +157,7 @@ public class BlockerThread implements Runnable {
                 // endregion
 
                 //region Gear Check
-                seg = MarvinSegment.fromCue(BHBotUnity.cues.get("GearCheck"), bot.browser);
-                if (seg != null) {
+                if (screen.is(ScreenClassifier.Screen.GEAR_CHECK)) {
                     seg = MarvinSegment.fromCue(BHBotUnity.cues.get("Close"), 2 * Misc.Durations.SECOND, bot.browser);
                     bot.browser.clickOnSeg(seg);
                     BHBotUnity.logger.info("Gear check dismissed.");
@@ -164,23 +167,26 @@ public class BlockerThread implements Runnable {
                 //endregion
 
                 //region PM
-                if (!handlePM()) {
+                HandlerResult pmResult = handlePM(screen.is(ScreenClassifier.Screen.IN_GAME_PM) ? screen.get("InGamePM") : null);
+                if (pmResult == HandlerResult.ERROR) {
                     bot.restart(true, bot.browser.isDoNotShareUrl()); //*** problem: after a call to this, it will return to the main loop. It should call "continue" inside the main loop or else there could be other exceptions!
                     continue;
                 }
+                if (pmResult == HandlerResult.DISMISSED) continue;
                 //endregion
 
                 //region Weekly reward
-                if (!handleWeeklyRewards()) {
+                HandlerResult weeklyResult = handleWeeklyRewards();
+                if (weeklyResult == HandlerResult.ERROR) {
                     bot.restart(true, false);
                     continue;
                 }
+                if (weeklyResult == HandlerResult.DISMISSED) continue;
                 //endregion
 
                 //region Daily Reward
                 // check for daily rewards popup:
-                seg = MarvinSegment.fromCue(BHBotUnity.cues.get("DailyRewards"), bot.browser);
-                if (seg != null) {
+                if (screen.is(ScreenClassifier.Screen.DAILY_REWARDS)) {
                     seg = MarvinSegment.fromCue(BHBotUnity.cues.get("Claim"), 5 * Misc.Durations.SECOND, bot.browser);
                     if (seg != null) {
                         if ((bot.settings.screenshots.contains("d"))) {
@@ -215,8 +221,7 @@ public class BlockerThread implements Runnable {
 
                 //region Recently disconnected from a Dungeon
                 // check for "recently disconnected" popup:
-                seg = MarvinSegment.fromCue(BHBotUnity.cues.get("RecentlyDisconnected"), bot.browser);
-                if (seg != null) {
+                if (screen.is(ScreenClassifier.Screen.RECENTLY_DISCONNECTED)) {
                     seg = MarvinSegment.fromCue(BHBotUnity.cues.get("YesGreen"), 2 * Misc.Durations.SECOND, Bounds.fromWidthHeight(290, 330, 85, 60), bot.browser);
                     if (seg == null) {
                         BHBotUnity.logger.error("Error: detected 'recently disconnected' popup but could not find 'Yes' button. Restarting...");
@@ -246,18 +251,10 @@ public class BlockerThread implements Runnable {
                         2) Guild cue has been found
                         3) We timed out after 5 minutes
                      */
-                    long reconnectTimeout = Misc.getTime() + (Misc.Durations.MINUTE * 5);
-                    MarvinSegment settingSeg;
-                    MarvinSegment guildSeg;
-
-                    do {
-                        bot.browser.readScreen(500);
-                        settingSeg = MarvinSegment.fromCue("SettingsGear", bot.browser);
-                        guildSeg = MarvinSegment.fromCue(BHBotUnity.cues.get("GuildButton"), bot.browser);
+                    MarvinSegment.CueMatch reconnected = MarvinSegment.waitForAny(Misc.Durations.MINUTE * 5, bot.browser,
+                            BHBotUnity.cues.get("SettingsGear"), BHBotUnity.cues.get("GuildButton"));
 
-                    } while (guildSeg == null && settingSeg == null && Misc.getTime() <= reconnectTimeout);
-
-                    if (guildSeg == null && settingSeg == null) {
+                    if (reconnected == null) {
                         BHBotUnity.logger.warn("'You were recently in a dungeon' reconnection timed-out");
                         bot.saveGameScreen("recently-disconnected-timeout", "errors");
                     }
@@ -272,8 +269,7 @@ public class BlockerThread implements Runnable {
 
                 //region News Popup
                 // check for "News" popup:
-                seg = MarvinSegment.fromCue(BHBotUnity.cues.get("News"), bot.browser);
-                if (seg != null) {
+                if (screen.is(ScreenClassifier.Screen.NEWS)) {
                     Cue CloseWithBounds = BHBotUnity.cues.get("NewsClose");
                     seg = MarvinSegment.fromCue(CloseWithBounds, 2 * Misc.Durations.SECOND, bot.browser);
                     bot.browser.clickOnSeg(seg);
@@ -287,8 +283,7 @@ public class BlockerThread implements Runnable {
                 //region Fishing Popup
                 // Sometimes the game is presenting fishing baits at login
                 if (!BHBotUnity.State.FishingBaits.equals(bot.getState())) {
-                    seg = MarvinSegment.fromCue("Fishing_Bait", 0, Bounds.fromWidthHeight(243, 190, 297, 154), bot.browser);
-                    if (seg != null) {
+                    if (screen.is(ScreenClassifier.Screen.FISHING_BAITS)) {
                         BHBotUnity.logger.debug("Fishing baits detected during login...");
                         if ((bot.settings.screenshots.contains("a"))) {
                             bot.saveGameScreen("fishing-baits", "fishing");
@@ -321,33 +316,36 @@ public class BlockerThread implements Runnable {
     }
 
     /**
-     * Will detect and handle (close) in-game private message (from the current screen capture). Returns true in case PM has been handled.
+     * Will detect and handle (close) in-game private message (from the current screen capture).
+     *
+     * @param pmSeg the InGamePM segment found by the blocker sweep, null if no PM is present
+     * @return DISMISSED in case PM has been handled, ERROR if the PM could not be closed
      */
-    private boolean handlePM() {
-        if (MarvinSegment.fromCue(BHBotUnity.cues.get("InGamePM"), bot.browser) != null) {
-            MarvinSegment seg = MarvinSegment.fromCue(BHBotUnity.cues.get("X"), 5 * Misc.Durations.SECOND, bot.browser);
-            if (seg == null) {
-                BHBotUnity.logger.error("Error: in-game PM window detected, but no close button found. Restarting...");
-                return false;
-            }
+    private HandlerResult handlePM(MarvinSegment pmSeg) {
+        if (pmSeg == null) return HandlerResult.NOT_FOUND;
 
-            try {
-                String pmFileName = bot.saveGameScreen("pm", "pm");
-                bot.notificationManager.sendPMNotification(pmFileName);
-                bot.browser.clickOnSeg(seg);
-            } catch (Exception e) {
-                // ignore it
-            }
+        MarvinSegment seg = MarvinSegment.fromCue(BHBotUnity.cues.get("X"), 5 * Misc.Durations.SECOND, bot.browser);
+        if (seg == null) {
+            BHBotUnity.logger.error("Error: in-game PM window detected, but no close button found. Restarting...");
+            return HandlerResult.ERROR;
+        }
+
+        try {
+            String pmFileName = bot.saveGameScreen("pm", "pm");
+            bot.notificationManager.sendPMNotification(pmFileName);
+            bot.browser.clickOnSeg(seg);
+        } catch (Exception e) {
+            // ignore it
         }
-        return true;
+        return HandlerResult.DISMISSED;
     }
 
     /**
      * This method takes care of managing weekly pop-up containing rewards for past week events.
      *
-     * @return false if any error is present, otherwise true
+     * @return DISMISSED if a reward popup has been closed, ERROR if it could not be closed
      */
-    private boolean handleWeeklyRewards() {
+    private HandlerResult handleWeeklyRewards() {
 
         record rewardInfo(String name, Cue rewardCue, String pathInfo) {}
 
@@ -359,6 +357,7 @@ public class BlockerThread implements Runnable {
 
             // We have an ArrayList containing all the required details
             final ArrayList<rewardInfo> rewardDetails = new ArrayList<>();
+            final ArrayList<Cue> rewardCues = new ArrayList<>();
             rewardDetails.add(new rewardInfo("Expedition", BHBotUnity.cues.get("Expedition_RewardsLarge"), "expedition"));
             rewardDetails.add(new rewardInfo("Expedition", BHBotUnity.cues.get("Expedition_RewardsSmall"), "expedition"));
             rewardDetails.add(new rewardInfo("Gauntlet", BHBotUnity.cues.get("Gauntlet_Rewards"), "gauntlet"));
@@ -368,25 +367,32 @@ public class BlockerThread implements Runnable {
             rewardDetails.add(new rewardInfo("Trials", BHBotUnity.cues.get("Trials_Rewards"), "trials"));
 
 
+            // All the reward popups are searched on the same frame
+            rewardDetails.forEach(reward -> rewardCues.add(reward.rewardCue));
+            Map<String, MarvinSegment> foundRewards = new CueSet(rewardCues).find(bot.browser.getFrame(), bot.browser);
+
             for (rewardInfo weeklyRewardEntry : rewardDetails) {
-                seg = MarvinSegment.fromCue(weeklyRewardEntry.rewardCue, bot.browser);
+                seg = foundRewards.get(weeklyRewardEntry.rewardCue.name);
                 if (seg != null) {
                     BufferedImage reward = bot.browser.getImg();
                     seg = MarvinSegment.fromCue("X", 5 * Misc.Durations.SECOND, bot.browser);
                     if (seg != null) bot.browser.clickOnSeg(seg);
                     else {
                         BHBotUnity.logger.error(weeklyRewardEntry.name + " reward popup detected, however could not detect the X button. Restarting...");
-                        return false;
+                        return HandlerResult.ERROR;
                     }
 
                     BHBotUnity.logger.info(weeklyRewardEntry.name + " reward claimed successfully.");
                     if ((bot.settings.screenshots.contains("w"))) {
                         Misc.saveScreen(weeklyRewardEntry.pathInfo + "_reward", "rewards/" + weeklyRewardEntry.pathInfo, BHBotUnity.includeMachineNameInScreenshots, reward);
                     }
+
+                    // The frame is now outdated, other popups (if any) are managed on the next tick
+                    return HandlerResult.DISMISSED;
                 }
             }
         }
 
-        return true;
+        return HandlerResult.NOT_FOUND;
     }
 }
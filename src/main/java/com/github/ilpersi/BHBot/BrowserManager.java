@@ -5,6 +5,7 @@ import org.openqa.selenium.Point;
 import org.openqa.selenium.*;
 import org.openqa.selenium.chrome.ChromeDriver;
 import org.openqa.selenium.chrome.ChromeOptions;
+import org.openqa.selenium.chromium.ChromiumDriver;
 import org.openqa.selenium.firefox.*;
 import org.openqa.selenium.interactions.Actions;
 import org.openqa.selenium.logging.LogEntry;
@@ -20,7 +21,9 @@ import java.awt.image.BufferedImage;
 import java.awt.image.RasterFormatException;
 import java.io.*;
 import java.net.*;
+import java.util.Base64;
 import java.util.HashSet;
+import java.util.Map;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import java.util.regex.Matcher;
@@ -35,12 +38,73 @@ public class BrowserManager {
     private WebElement game;
     private String doNotShareUrl = "";
 
-    private BufferedImage img = null; // latest screen capture
+    // Captured images are decoded in pooled rasters, that are recycled once the frames using them are superseded
+    private final ImagePool imagePool = new ImagePool();
+    // Game frames are shared between threads, each thread keeps the last frame it read
+    private final FrameBus frameBus = new FrameBus(imagePool);
     private final BHBotUnity bot;
 
     private final String browserProfile;
 
     private long lastClickTime = Misc.getTime();
+    // When the last click or key press ended, captures started before it can't be shared with the thread that sent it
+    private volatile long lastInputTime = 0;
+
+    /**
+     * Position of the game element in the browser viewport and scroll offsets of the page
+     *
+     * @param checkTime when the geometry was read from the browser
+     */
+    private record GameGeometry(int x, int y, int width, int height, int scrollX, int scrollY, long checkTime) {
+        boolean hasSameRect(GameGeometry other) {
+            return x == other.x && y == other.y && width == other.width && height == other.height;
+        }
+    }
+
+    private volatile GameGeometry gameGeometry = null;
+    // How often the cached geometry is read again even if the page did not report any change
+    private static final int GEOMETRY_CHECK_INTERVAL = 2 * Misc.Durations.SECOND;
+
+    // Reads the geometry of the game element. The first time it is run in a page, it also installs the listeners that
+    // flag the geometry as dirty when the game element is resized or the page is scrolled or resized
+    private static final String GEOMETRY_SCRIPT = """
+            var game = arguments[0];
+            if (window.bhbotGeometryElement !== game) {
+                var setDirty = function () { window.bhbotGeometryDirty = true; };
+                if (!window.bhbotGeometryElement) {
+                    window.addEventListener('scroll', setDirty, true);
+                    window.addEventListener('resize', setDirty);
+                }
+                if (window.ResizeObserver) {
+                    if (window.bhbotGeometryObserver) window.bhbotGeometryObserver.disconnect();
+                    window.bhbotGeometryObserver = new ResizeObserver(setDirty);
+                    window.bhbotGeometryObserver.observe(game);
+                }
+                window.bhbotGeometryElement = game;
+            }
+
+            game.scrollIntoView(true);
+            window.bhbotGeometryDirty = false;
+            var rect = game.getBoundingClientRect();
+            return '' + parseInt(rect.left) + ',' + parseInt(rect.top) + ',' + parseInt(rect.width) + ',' + parseInt(rect.height)
+                    + ',' + parseInt(window.scrollX) + ',' + parseInt(window.scrollY);
+            """;
+    // True when the geometry may have changed since it was read, or when the listeners are missing (e.g. after a reload)
+    private static final String GEOMETRY_DIRTY_SCRIPT = "return window.bhbotGeometryDirty !== false;";
+
+    // Push based capture, only used when captureMode is screencast
+    private ScreencastCapture screencast = null;
+    // Readback of the game canvas, only used when captureMode is canvas
+    private CanvasCapture canvasCapture = null;
+    // Screencast frames older than this are not used, and how long to wait for a newer one before taking a screenshot
+    private static final int SCREENCAST_MAX_AGE = Misc.Durations.SECOND;
+    private static final int SCREENCAST_WAIT = 250;
+
+    // Consecutive unchanged captures required by waitForStable, and the delay between them
+    private static final int STABLE_FRAMES = 2;
+    private static final int STABLE_POLL_DELAY = 50;
+    // How long waitForStable waits for a region that never changed, in case the transition did not start yet
+    private static final int STABLE_MIN_WAIT = 500;
 
     private final String COOKIE_DAT_PATH_FORMAT = "./data/cookies_%s.dat";
     boolean cookiesLoaded = false;
@@ -189,6 +253,8 @@ public class BrowserManager {
             }
         }
 
+        stopScreencast();
+
         try {
             if (driver != null) {
                 // driver.close();
@@ -225,10 +291,32 @@ public class BrowserManager {
             driver.manage().window().setSize(new Dimension(vw, vh));
         }
 
+        // the game element and the window size changed
+        invalidateGameGeometry();
+
+        // A new page is loaded, so the canvas availability is checked again
+        canvasCapture = "canvas".equals(bot.settings.captureMode) ? new CanvasCapture(imagePool) : null;
+
+        if ("screencast".equals(bot.settings.captureMode)) {
+            if (!bot.settings.useFirefox)
+                screencast = ScreencastCapture.start(driver, bot.settings.screencastAckDelay, imagePool);
+            else
+                BHBotUnity.logger.warn("Screencast capture is only available for Chrome, screenshots will be used to read the screen.");
+        }
+
         isRestarting = false;
     }
 
+    private void stopScreencast() {
+        if (screencast != null) {
+            screencast.stop();
+            screencast = null;
+        }
+    }
+
     synchronized void close() {
+        stopScreencast();
+
         if (driver != null) {
             try {
                 // driver.close();
@@ -257,6 +345,7 @@ public class BrowserManager {
                 + "window.scrollBy(0, elementTop-(viewPortHeight/2));";
 
         jsExecutor.executeScript(scrollElementIntoMiddle, element);
+        invalidateGameGeometry();
         Misc.sleep(1000);
     }
 
@@ -309,60 +398,75 @@ public class BrowserManager {
         scrollGameIntoView();
     }
 
+    /**
+     * @param ofGame if true only the game element is captured, otherwise the whole browser viewport
+     * @return the captured image, it usually comes from imagePool and the caller can release it once it is not needed
+     */
     BufferedImage takeScreenshot(boolean ofGame) {
+        return captureScreen(ofGame).image();
+    }
 
+    /**
+     * @param ofGame if true only the game element is captured, otherwise the whole browser viewport
+     * @return the captured image, with the time its pixels are not older than
+     */
+    private FrameBus.Screenshot captureScreen(boolean ofGame) {
+        long start = Misc.getTime();
 
         try {
-            // we scroll the window to the game element
-            jsExecutor.executeScript("arguments[0].scrollIntoView(true);", game);
-
-            // we read the image as a byte array and later convert it to a BufferedImage
-            byte[] imgBytes = ((TakesScreenshot)driver).getScreenshotAs(OutputType.BYTES);
-            InputStream in  = new ByteArrayInputStream(imgBytes);
-            BufferedImage bImageFromConvert = ImageIO.read(in);
-
             if (ofGame) {
-                String listStr = (String) jsExecutor.executeScript("var rect = arguments[0].getBoundingClientRect();" +
-                "return '' + parseInt(rect.left) + ',' + parseInt(rect.top) + ',' + parseInt(rect.width) + ',' + parseInt(rect.height)", game);
+                GameGeometry geometry = getGameGeometry();
+                if (geometry == null) return new FrameBus.Screenshot(imagePool.blank(800, 520), start);
 
-                String[] list;
-                try {
-                    list = listStr.split(",");
-                } catch (NullPointerException e) {
-                    BHBotUnity.logger.trace("JS Executor error while getting windows dimensions.", e);
-                    return new BufferedImage(800, 520, BufferedImage.TYPE_INT_RGB);
+                final int x = geometry.x, y = geometry.y, width = geometry.width, height = geometry.height;
+
+                if (canvasCapture != null) {
+                    BufferedImage canvasImg = canvasCapture.read(jsExecutor, game, width, height);
+                    if (canvasImg != null) return new FrameBus.Screenshot(canvasImg, start);
                 }
 
-                final int x = Math.max(Integer.parseInt(list[0]), 0);
-                final int y = Math.max(Integer.parseInt(list[1]), 0);
-                final int width = Integer.parseInt(list[2]);
-                final int height = Integer.parseInt(list[3]);
+                // Chrome can capture the game rectangle only, the clip uses page coordinates
+                if ("clip".equals(bot.settings.captureMode) && driver instanceof ChromiumDriver) {
+                    BufferedImage clipImg = captureClip(x + geometry.scrollX, y + geometry.scrollY, width, height);
+                    if (clipImg != null) return new FrameBus.Screenshot(clipImg, start);
+                }
 
-                BufferedImage result;
+                FrameBus.Screenshot viewport = null;
                 try {
-                    result = bImageFromConvert.getSubimage(x, y, width, height);
+                    // with the screencast the game area is copied straight from the latest frame
+                    FrameBus.Screenshot gameShot = screencast != null ? screencast.getFrame(screencastNotBefore(), SCREENCAST_WAIT, x, y, width, height) : null;
+                    if (gameShot != null) return gameShot;
+
+                    // a copy of the game area, so that the full page image can go back to the pool
+                    viewport = captureViewport();
+                    return new FrameBus.Screenshot(imagePool.copy(viewport.image(), x, y, width, height), viewport.timestamp());
                 } catch (java.awt.image.RasterFormatException e) {
-                    jsExecutor.executeScript("arguments[0].scrollIntoView(true);", game);
+                    // the layout changed, the game element is scrolled into view again at the next capture
+                    invalidateGameGeometry();
                     BHBotUnity.logger.trace("Error when taking screenshot based on getBoundingClientRect()", e);
-                    return new BufferedImage(800, 520, BufferedImage.TYPE_INT_RGB);
+                    return new FrameBus.Screenshot(imagePool.blank(800, 520), start);
+                } finally {
+                    if (viewport != null) imagePool.release(viewport.image());
                 }
-
-                return result;
             }
-            else
-                return bImageFromConvert;
+            else {
+                // we scroll the window to the game element
+                jsExecutor.executeScript("arguments[0].scrollIntoView(true);", game);
+                return captureViewport();
+            }
         } catch (StaleElementReferenceException e) {
             // sometimes the game element is not available, if this happen we just return an empty image
             BHBotUnity.logger.debug("Stale image detected while taking a screenshot. Trying to reset game element.");
 
             // For more details about this line of code, have a look here: https://www.selenium.dev/exceptions/#stale_element_reference
+            invalidateGameGeometry();
             try {
                 game = driver.findElement(byElement);
             } catch (Exception ex) {
                 BHBotUnity.logger.error("It was impossible to reset the game element! Generating an empty screenshot.");
             }
 
-            return new BufferedImage(800, 520, BufferedImage.TYPE_INT_RGB);
+            return new FrameBus.Screenshot(imagePool.blank(800, 520), start);
 
         } catch (TimeoutException | IOException e) {
             // sometimes Chrome/Chromium crashes and it is impossible to take screenshots from it
@@ -380,8 +484,9 @@ public class BrowserManager {
             }
 
             if (bot.settings.hideWindowOnRestart) hideBrowser();
-            return screen;
+            return new FrameBus.Screenshot(screen, start);
         } catch (RasterFormatException e) {
+            invalidateGameGeometry();
             jsExecutor.executeScript("arguments[0].scrollIntoView(true);", game);
             throw e;
         }
@@ -389,17 +494,17 @@ public class BrowserManager {
             if (!isRestarting) {
                 BHBotUnity.logger.error("NoSuchSessionException when taking screenshot and no restart in progress: ", e);
             }
-            return new BufferedImage(800, 520, BufferedImage.TYPE_INT_RGB);
+            return new FrameBus.Screenshot(imagePool.blank(800, 520), start);
         }
         catch (UnreachableBrowserException e) {
             BHBotUnity.logger.error("UnreachableBrowserException when taking screenshot: ", e);
             restart(false);
-            return new BufferedImage(800, 520, BufferedImage.TYPE_INT_RGB);
+            return new FrameBus.Screenshot(imagePool.blank(800, 520), start);
         }
         catch (RuntimeException e) {
             BHBotUnity.logger.error("Runtime error when taking screenshot: ", e);
             restart(false);
-            return new BufferedImage(800, 520, BufferedImage.TYPE_INT_RGB);
+            return new FrameBus.Screenshot(imagePool.blank(800, 520), start);
         }
     }
 
@@ -419,11 +524,106 @@ public class BrowserManager {
             Actions act = new Actions(driver);
             act.moveToElement(game, movePos.x, movePos.y);
             act.perform();
+            // hover effects change the screen, so older captures can't be shared with this thread
+            lastInputTime = Misc.getTime();
         } catch (Exception e) {
             // do nothing
         }
     }
 
+    /**
+     * Returns the position of the game element, scrolling it into view. The result is cached: the page flags it as
+     * dirty when the game element is resized or the page is scrolled or resized, so most of the captures only need to
+     * read the flag. The geometry is also read again every GEOMETRY_CHECK_INTERVAL, in case a change was not reported,
+     * and the cache is invalidated on restart, refresh and when the element is stale or outside the captured image.
+     *
+     * @return the geometry of the game element or null if it was not possible to read it
+     */
+    private GameGeometry getGameGeometry() {
+        GameGeometry geometry = gameGeometry;
+        if (geometry != null && (Misc.getTime() - geometry.checkTime) < GEOMETRY_CHECK_INTERVAL
+                && Boolean.FALSE.equals(jsExecutor.executeScript(GEOMETRY_DIRTY_SCRIPT))) return geometry;
+
+        String listStr = (String) jsExecutor.executeScript(GEOMETRY_SCRIPT, game);
+
+        String[] list;
+        try {
+            list = listStr.split(",");
+        } catch (NullPointerException e) {
+            BHBotUnity.logger.trace("JS Executor error while getting windows dimensions.", e);
+            return null;
+        }
+
+        geometry = new GameGeometry(Math.max(Integer.parseInt(list[0]), 0), Math.max(Integer.parseInt(list[1]), 0),
+                Integer.parseInt(list[2]), Integer.parseInt(list[3]), Integer.parseInt(list[4]), Integer.parseInt(list[5]), Misc.getTime());
+
+        if (gameGeometry != null && !geometry.hasSameRect(gameGeometry)) {
+            BHBotUnity.logger.debug("Game element moved to " + geometry.x + "," + geometry.y + " size " + geometry.width + "x" + geometry.height);
+        }
+
+        gameGeometry = geometry;
+        return geometry;
+    }
+
+    void invalidateGameGeometry() {
+        gameGeometry = null;
+    }
+
+    /**
+     * @return the image of the browser viewport, the caller can release it to the pool once it is not used anymore
+     */
+    private FrameBus.Screenshot captureViewport() throws IOException {
+        // with the screencast the latest frame is already available, otherwise we take a screenshot
+        FrameBus.Screenshot viewport = screencast != null ? screencast.getFrame(screencastNotBefore(), SCREENCAST_WAIT) : null;
+
+        if (viewport == null) {
+            long start = Misc.getTime();
+            // we read the image as a byte array and decode it in a pooled image
+            byte[] imgBytes = ((TakesScreenshot)driver).getScreenshotAs(OutputType.BYTES);
+            viewport = new FrameBus.Screenshot(imagePool.decode(imgBytes), start);
+        }
+
+        return viewport;
+    }
+
+    /**
+     * @return the paint time a screencast frame needs to be used: after the last input and not older than SCREENCAST_MAX_AGE
+     */
+    private long screencastNotBefore() {
+        return Math.max(lastInputTime, Misc.getTime() - SCREENCAST_MAX_AGE);
+    }
+
+    /**
+     * Uses the DevTools Page.captureScreenshot command to read a region of the page, so that the pixels outside it are
+     * never encoded, transferred or decoded.
+     *
+     * @return the image of the region or null if it was not possible to capture it
+     */
+    private BufferedImage captureClip(int x, int y, int width, int height) throws IOException {
+        Map<String, Object> clip = Map.of("x", x, "y", y, "width", width, "height", height, "scale", 1);
+
+        Map<String, Object> result;
+        try {
+            result = ((ChromiumDriver) driver).executeCdpCommand("Page.captureScreenshot", Map.of("format", "png", "clip", clip));
+        } catch (WebDriverException e) {
+            BHBotUnity.logger.debug("Error when capturing the game rectangle, a screenshot of the viewport will be used.", e);
+            return null;
+        }
+
+        Object data = result != null ? result.get("data") : null;
+        if (!(data instanceof String)) return null;
+
+        BufferedImage clipImg = imagePool.decode(Base64.getDecoder().decode((String) data));
+        if (clipImg.getType() == BufferedImage.TYPE_INT_RGB) return clipImg;
+
+        // frames can only adopt RGB images, so RGBA data is copied in a pooled RGB image
+        try {
+            return imagePool.copy(clipImg, 0, 0, clipImg.getWidth(), clipImg.getHeight());
+        } finally {
+            imagePool.release(clipImg);
+        }
+    }
+
     /**
      * Performs a mouse click on the center of the given segment
      */
@@ -451,6 +651,7 @@ public class BrowserManager {
         act = new Actions(driver);
         act.click();
         act.perform();
+        lastInputTime = Misc.getTime();
 
         // so that the mouse doesn't stay on the button, for example. Or else button will be highlighted and cue won't get detected!
         moveMouseAway();
@@ -555,6 +756,7 @@ public class BrowserManager {
             Actions act = new Actions(driver);
             act.sendKeys(Keys.ESCAPE);
             act.perform();
+            lastInputTime = Misc.getTime();
 
             curCnt++;
 
@@ -595,10 +797,90 @@ public class BrowserManager {
 
         if (wait != 0)
             Misc.sleep(wait);
-        img = takeScreenshot(game);
+
+        // Browser screenshots have a different size, so they are not shared
+        Frame frame;
+        if (game) {
+            frame = frameBus.capture(lastInputTime, () -> captureScreen(true));
+        } else {
+            FrameBus.Screenshot shot = captureScreen(false);
+            frame = frameBus.use(new Frame(shot.image(), shot.timestamp()));
+            imagePool.release(shot.image());
+        }
 
         // This setting should only be enabled for development purpose. Performance impact is very high.
-        if (bot.settings.dumpReadScreen) Misc.saveScreen("screen-dump", "screen-dump", BHBotUnity.includeMachineNameInScreenshots, img);
+        if (bot.settings.dumpReadScreen) Misc.saveScreen("screen-dump", "screen-dump", BHBotUnity.includeMachineNameInScreenshots, frame.image);
+    }
+
+    /**
+     * Reads the screen using the frames captured by the other threads: if a frame newer than the last one read by this
+     * thread is published within timeout, it is used without taking a new screenshot. Otherwise the screen is read.
+     *
+     * @param timeout maximum time to wait for a frame captured by another thread, in milliseconds
+     */
+    void awaitScreen(int timeout) {
+        if (isRestarting) return;
+
+        Frame lastFrame = frameBus.current();
+        Frame frame = frameBus.awaitNext(lastFrame != null ? lastFrame.id : 0, timeout);
+
+        if (frame == null) readScreen();
+    }
+
+    /**
+     * Reads the screen until a region stops changing, e.g. while a popup is sliding in or bouncing. This is meant to
+     * replace fixed waits after clicks: the region is stable when it is unchanged for STABLE_FRAMES consecutive
+     * captures, and the method never waits more than maxWait.
+     * <p>
+     * Right after a click the screen may not have started to change yet, so a region is only considered stable once
+     * it changed at least once or, if it never did, after STABLE_MIN_WAIT.
+     *
+     * @param bounds  the region to check, if null the whole screen is checked
+     * @param maxWait maximum time to wait in milliseconds
+     * @return true if the region is stable, false if maxWait expired first
+     */
+    boolean waitForStable(Bounds bounds, int maxWait) {
+        return waitForStable(bounds, STABLE_MIN_WAIT, maxWait);
+    }
+
+    /**
+     * Waits for a cue to appear and then for its region to stop changing, e.g. for a popup that bounces when it is
+     * opened. As the cue is already on screen, the region does not need to change before it is considered stable.
+     *
+     * @param anchor  the cue to wait for, its bounds are the region to check
+     * @param maxWait maximum time to wait in milliseconds, for both the cue and the stability
+     * @return true if the cue was found and its region is stable, false if maxWait expired first
+     */
+    boolean waitForStable(Cue anchor, int maxWait) {
+        long timer = Misc.getTime();
+
+        if (MarvinSegment.fromCue(anchor, maxWait, this) == null) return false;
+
+        return waitForStable(anchor.bounds, 0, (int) Math.max(0, maxWait - (Misc.getTime() - timer)));
+    }
+
+    private boolean waitForStable(Bounds bounds, int minWait, int maxWait) {
+        long timer = Misc.getTime();
+
+        readScreen();
+        Frame lastFrame = getFrame();
+        int stableCnt = 0;
+        boolean changed = false;
+
+        while (stableCnt < STABLE_FRAMES || (!changed && (Misc.getTime() - timer) < minWait)) {
+            if ((Misc.getTime() - timer) >= maxWait) return false;
+
+            readScreen(STABLE_POLL_DELAY, true);
+            Frame newFrame = getFrame();
+            boolean unchanged = bounds == null ? newFrame.isUnchanged(lastFrame, 0, 0, newFrame.width, newFrame.height)
+                    : newFrame.isUnchanged(lastFrame, bounds.x1, bounds.y1, bounds.x2, bounds.y2);
+
+            if (!unchanged) changed = true;
+            stableCnt = unchanged ? stableCnt + 1 : 0;
+            lastFrame = newFrame;
+        }
+
+        return true;
     }
 
     /**
@@ -619,17 +901,47 @@ public class BrowserManager {
                 BHBotUnity.logger.error("Error when loading game screen ", e);
             }
 
-            img = screenImg;
+            if (screenImg != null) frameBus.publish(screenImg);
+            else frameBus.use(null);
         } else {
             BHBotUnity.logger.error("Impossible to load screen file: " + screenImgFile.getAbsolutePath());
         }
     }
 
+    /**
+     * @return the image of the latest screen capture, the caller can keep it as the frame will never give it back to
+     * the pool. Use getFrame when possible.
+     */
     public BufferedImage getImg() {
-        if (img == null)
+        Frame lastFrame = getFrame();
+        if (lastFrame == null) return null;
+
+        frameBus.escape(lastFrame);
+        return lastFrame.image;
+    }
+
+    /**
+     * @return when the last click or key press ended, in milliseconds
+     */
+    long getLastInputTime() {
+        return lastInputTime;
+    }
+
+    /**
+     * @return the latest screen capture, with its pixels already decoded
+     */
+    Frame getFrame() {
+        Frame frame = frameBus.current();
+        if (frame != null) return frame;
+
+        // Threads that did not read the screen yet use the latest frame captured by the others
+        frame = frameBus.useLatest();
+        if (frame == null) {
             readScreen();
+            frame = frameBus.current();
+        }
 
-        return img;
+        return frame;
     }
 
     private int getChromeVersion() {
@@ -640,7 +952,9 @@ public class BrowserManager {
     private Point getChromeOffset(int x, int y) {
         // As of Chrome 75, offsets are calculated from the center of the elements
         if (getChromeVersion() >= 75) {
-            Dimension gameDimension = game.getSize();
+            // The size of the game is cached, so that clicks don't need an additional round trip
+            GameGeometry geometry = gameGeometry;
+            Dimension gameDimension = geometry != null ? new Dimension(geometry.width, geometry.height) : game.getSize();
             int gameCenterX = gameDimension.width / 2;
             int gameCenterY = gameDimension.height / 2;
             return new Point(x -gameCenterX, y - gameCenterY);
@@ -654,6 +968,7 @@ public class BrowserManager {
         Misc.sleep(Misc.Durations.SECOND * 3);
         // As we refreshed, we make sure to point game to the newly loaded element
         game = driver.findElement(byElement);
+        invalidateGameGeometry();
     }
 
     void manageLogin() {
@@ -0,0 +1,146 @@
+package com.github.ilpersi.BHBot;
+
+import org.openqa.selenium.JavascriptExecutor;
+import org.openqa.selenium.WebDriverException;
+import org.openqa.selenium.WebElement;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.util.Base64;
+
+/**
+ * Reads the pixels of the game canvas from inside the page, so that the browser does not need to encode a PNG
+ * screenshot and the bot does not need to decode it. Pixels are returned as a base64 blob of RGB triplets that is
+ * written straight into the int[] raster of the image.
+ * <p>
+ * WebGL canvases are cleared once they are presented, so the canvas is copied right after the game renders a frame:
+ * requestAnimationFrame is wrapped and pending reads are served after each animation frame callback.
+ * <p>
+ * The canvas must be in the same document of the game element and cover it exactly (e.g. when the do_not_share url is
+ * used), otherwise the capture is disabled and screenshots are used.
+ */
+class CanvasCapture {
+
+    // Maximum time the page waits for an animation frame, in milliseconds
+    private static final int FRAME_TIMEOUT = 250;
+    // Consecutive timeouts or blank reads after which the canvas is not read anymore, e.g. when the window is hidden
+    private static final int MAX_FAILED_READS = 3;
+
+    private static final String READBACK_SCRIPT = """
+            var done = arguments[arguments.length - 1];
+            var game = arguments[0];
+            var canvas = game.tagName === 'CANVAS' ? game : game.querySelector('canvas');
+            if (!canvas) { done('nocanvas'); return; }
+
+            var rect = game.getBoundingClientRect(), canvasRect = canvas.getBoundingClientRect();
+            if (parseInt(rect.left) !== parseInt(canvasRect.left) || parseInt(rect.top) !== parseInt(canvasRect.top)
+                    || canvas.width !== parseInt(rect.width) || canvas.height !== parseInt(rect.height)) {
+                done('layout');
+                return;
+            }
+
+            if (!window.bhbotReadback) {
+                window.bhbotReadback = [];
+                var requestAnimationFrame = window.requestAnimationFrame;
+                window.requestAnimationFrame = function (callback) {
+                    return requestAnimationFrame.call(window, function (time) {
+                        callback(time);
+                        var reads = window.bhbotReadback;
+                        window.bhbotReadback = [];
+                        reads.forEach(function (read) { read(); });
+                    });
+                };
+            }
+
+            var finished = false;
+            var timer = setTimeout(function () { finished = true; done('timeout'); }, arguments[1]);
+            window.bhbotReadback.push(function () {
+                if (finished) return;
+                finished = true;
+                clearTimeout(timer);
+
+                var w = canvas.width, h = canvas.height;
+                var copy = document.createElement('canvas');
+                copy.width = w;
+                copy.height = h;
+                var ctx = copy.getContext('2d');
+                ctx.drawImage(canvas, 0, 0);
+                var rgba = ctx.getImageData(0, 0, w, h).data;
+
+                var rgb = new Uint8Array(w * h * 3), alpha = 0;
+                for (var i = 0, j = 0; i < rgba.length; i += 4) {
+                    rgb[j++] = rgba[i];
+                    rgb[j++] = rgba[i + 1];
+                    rgb[j++] = rgba[i + 2];
+                    alpha |= rgba[i + 3];
+                }
+                if (alpha === 0) { done('blank'); return; }
+
+                var binary = '';
+                for (var k = 0; k < rgb.length; k += 0x8000) binary += String.fromCharCode.apply(null, rgb.subarray(k, k + 0x8000));
+                done(w + ',' + h + ',' + btoa(binary));
+            });
+            """;
+
+    private final ImagePool imagePool;
+    private boolean available = true;
+    private int failedReads = 0;
+
+    CanvasCapture(ImagePool imagePool) {
+        this.imagePool = imagePool;
+    }
+
+    /**
+     * @param jsExecutor the executor of the browser
+     * @param game       the game element
+     * @param width      expected width of the game
+     * @param height     expected height of the game
+     * @return the game image or null if it was not possible to read the canvas
+     */
+    BufferedImage read(JavascriptExecutor jsExecutor, WebElement game, int width, int height) {
+        if (!available) return null;
+
+        Object result;
+        try {
+            result = jsExecutor.executeAsyncScript(READBACK_SCRIPT, game, FRAME_TIMEOUT);
+        } catch (WebDriverException e) {
+            BHBotUnity.logger.trace("Error while reading the game canvas.", e);
+            return null;
+        }
+
+        if (!(result instanceof String resultStr)) return null;
+
+        // other errors mean that the canvas can't be read in this page
+        if ("nocanvas".equals(resultStr) || "layout".equals(resultStr)) {
+            BHBotUnity.logger.warn("The game canvas can't be read (" + resultStr + "), screenshots will be used to read the screen.");
+            available = false;
+            return null;
+        }
+
+        // timeout and blank may be temporary, but each of them makes the capture wait up to FRAME_TIMEOUT
+        if ("timeout".equals(resultStr) || "blank".equals(resultStr)) {
+            if (++failedReads >= MAX_FAILED_READS) {
+                BHBotUnity.logger.warn("The game canvas can't be read (" + failedReads + " consecutive " + resultStr + "), screenshots will be used to read the screen.");
+                available = false;
+            }
+            return null;
+        }
+        failedReads = 0;
+
+        String[] parts = resultStr.split(",", 3);
+        if (parts.length != 3) return null;
+
+        int canvasWidth = Integer.parseInt(parts[0]);
+        int canvasHeight = Integer.parseInt(parts[1]);
+        if (canvasWidth != width || canvasHeight != height) return null;
+
+        byte[] rgb = Base64.getDecoder().decode(parts[2]);
+        BufferedImage image = imagePool.acquire(canvasWidth, canvasHeight);
+        int[] pixels = ((DataBufferInt) image.getRaster().getDataBuffer()).getData();
+        for (int i = 0, j = 0; i < pixels.length; i++, j += 3) {
+            pixels[i] = ((rgb[j] & 0xff) << 16) | ((rgb[j + 1] & 0xff) << 8) | (rgb[j + 2] & 0xff);
+        }
+
+        return image;
+    }
+}
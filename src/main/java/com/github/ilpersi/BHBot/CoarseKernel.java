@@ -0,0 +1,223 @@
+package com.github.ilpersi.BHBot;
+
+import java.util.Arrays;
+import java.util.Comparator;
+
+/**
+ * Downsampled version of a CueKernel used for coarse-to-fine searches. The cue is split in blocks of factor x factor
+ * pixels and, for each block without transparent pixels, the sum of each color channel is stored.
+ * <p>
+ * When a cue matches, each of its pixels is within the channel tolerance, so each block sum is within
+ * tolerance * factor * factor from the one of the frame. A block failing this test contains at least one mismatching
+ * pixel: candidate positions with more failing blocks than the allowed mismatches are discarded without looking at the
+ * full resolution pixels, all the others are verified with the full resolution matcher. To make sure that no match is lost, the
+ * downsampled frame is computed at every pixel offset (see FrameSums) and not only on the factor grid.
+ */
+class CoarseKernel {
+
+    /**
+     * Sums of each factor x factor block of a frame region, one for each pixel of the region. Sums of a whole Frame are
+     * cached on the frame (see Frame.frameSums), so they are computed only once for each capture.
+     */
+    static class FrameSums {
+        private final int x1, y1, width;
+        // Sums are at most 255 * factor * factor, so they fit in a char with factors up to 4
+        private final char[] red, green, blue;
+
+        private FrameSums(int x1, int y1, int width, int height) {
+            this.x1 = x1;
+            this.y1 = y1;
+            this.width = width;
+            red = new char[width * height];
+            green = new char[width * height];
+            blue = new char[width * height];
+        }
+    }
+
+    final int factor;
+
+    // Top-left corner and channel sums of each fully opaque block
+    private final int[] blockX;
+    private final int[] blockY;
+    private final int[] sumRed;
+    private final int[] sumGreen;
+    private final int[] sumBlue;
+
+    private CoarseKernel(int factor, int[] blockX, int[] blockY, int[] sumRed, int[] sumGreen, int[] sumBlue) {
+        this.factor = factor;
+        this.blockX = blockX;
+        this.blockY = blockY;
+        this.sumRed = sumRed;
+        this.sumGreen = sumGreen;
+        this.sumBlue = sumBlue;
+    }
+
+    /**
+     * @param kernel the full resolution kernel
+     * @param factor the downsampling factor
+     * @return the coarse kernel or null if the cue has no fully opaque block
+     */
+    static CoarseKernel fromKernel(CueKernel kernel, int factor) {
+        int blocksPerRow = kernel.width / factor;
+        int blocksPerColumn = kernel.height / factor;
+
+        int[][] blocks = new int[blocksPerRow * blocksPerColumn][];
+        int blockCnt = 0;
+
+        for (int by = 0; by < blocksPerColumn; by++) {
+            blockLoop:
+            for (int bx = 0; bx < blocksPerRow; bx++) {
+                int red = 0, green = 0, blue = 0;
+
+                for (int i = 0; i < factor; i++) {
+                    for (int j = 0; j < factor; j++) {
+                        int pixelIdx = ((by * factor + i) * kernel.width) + (bx * factor) + j;
+
+                        // transparent pixels can have any value, so the block can't be used
+                        if (kernel.rowOpaque[pixelIdx] == 0) continue blockLoop;
+
+                        red += kernel.rowRed[pixelIdx];
+                        green += kernel.rowGreen[pixelIdx];
+                        blue += kernel.rowBlue[pixelIdx];
+                    }
+                }
+
+                blocks[blockCnt++] = new int[]{bx * factor, by * factor, red, green, blue};
+            }
+        }
+
+        if (blockCnt == 0) return null;
+
+        // Blocks far from the average color of the cue are tested first, as they are more likely to reject candidates
+        int[][] usedBlocks = Arrays.copyOf(blocks, blockCnt);
+        double avgRed = Arrays.stream(usedBlocks).mapToInt(block -> block[2]).average().orElse(0);
+        double avgGreen = Arrays.stream(usedBlocks).mapToInt(block -> block[3]).average().orElse(0);
+        double avgBlue = Arrays.stream(usedBlocks).mapToInt(block -> block[4]).average().orElse(0);
+        Arrays.sort(usedBlocks, Comparator.comparingDouble((int[] block) ->
+                Math.abs(block[2] - avgRed) + Math.abs(block[3] - avgGreen) + Math.abs(block[4] - avgBlue)).reversed());
+
+        int[] blockX = new int[blockCnt], blockY = new int[blockCnt];
+        int[] sumRed = new int[blockCnt], sumGreen = new int[blockCnt], sumBlue = new int[blockCnt];
+        for (int k = 0; k < blockCnt; k++) {
+            blockX[k] = usedBlocks[k][0];
+            blockY[k] = usedBlocks[k][1];
+            sumRed[k] = usedBlocks[k][2];
+            sumGreen[k] = usedBlocks[k][3];
+            sumBlue[k] = usedBlocks[k][4];
+        }
+
+        return new CoarseKernel(factor, blockX, blockY, sumRed, sumGreen, sumBlue);
+    }
+
+    /**
+     * Computes the block sums of a frame region using sliding windows, first on rows and then on columns. Only the
+     * horizontal sums of the last factor rows are kept while the columns are summed.
+     *
+     * @param imageInRGB pixels of the frame
+     * @param stride     width of the frame
+     * @param x1         left side of the region
+     * @param y1         top side of the region
+     * @param x2         right side of the region (excluded)
+     * @param y2         bottom side of the region (excluded)
+     * @return the block sums for every position of the region where a whole block fits
+     */
+    FrameSums frameSums(int[] imageInRGB, int stride, int x1, int y1, int x2, int y2) {
+        int width = Math.max(0, x2 - x1 - factor + 1);
+        int height = Math.max(0, y2 - y1 - factor + 1);
+        int rows = Math.max(0, y2 - y1);
+        FrameSums sums = new FrameSums(x1, y1, width, height);
+        if (width == 0) return sums;
+
+        // horizontal sums of the last factor rows and their running vertical sums
+        int[] rowRed = new int[factor * width], rowGreen = new int[factor * width], rowBlue = new int[factor * width];
+        int[] colRed = new int[width], colGreen = new int[width], colBlue = new int[width];
+
+        for (int y = 0; y < rows; y++) {
+            int ring = (y % factor) * width;
+
+            // the row leaving the window is the one overwritten in the ring
+            if (y >= factor) {
+                for (int x = 0; x < width; x++) {
+                    colRed[x] -= rowRed[ring + x];
+                    colGreen[x] -= rowGreen[ring + x];
+                    colBlue[x] -= rowBlue[ring + x];
+                }
+            }
+
+            int red = 0, green = 0, blue = 0;
+            int rowStart = ((y1 + y) * stride) + x1;
+
+            for (int x = 0; x < x2 - x1; x++) {
+                int pixel = imageInRGB[rowStart + x];
+                red += (pixel >> 16) & 0xff;
+                green += (pixel >> 8) & 0xff;
+                blue += pixel & 0xff;
+
+                if (x >= factor) {
+                    int oldPixel = imageInRGB[rowStart + x - factor];
+                    red -= (oldPixel >> 16) & 0xff;
+                    green -= (oldPixel >> 8) & 0xff;
+                    blue -= oldPixel & 0xff;
+                }
+
+                if (x >= factor - 1) {
+                    int idx = x - factor + 1;
+                    rowRed[ring + idx] = red;
+                    rowGreen[ring + idx] = green;
+                    rowBlue[ring + idx] = blue;
+                    colRed[idx] += red;
+                    colGreen[idx] += green;
+                    colBlue[idx] += blue;
+                }
+            }
+
+            if (y >= factor - 1) {
+                int out = (y - factor + 1) * width;
+                for (int x = 0; x < width; x++) {
+                    sums.red[out + x] = (char) colRed[x];
+                    sums.green[out + x] = (char) colGreen[x];
+                    sums.blue[out + x] = (char) colBlue[x];
+                }
+            }
+        }
+
+        return sums;
+    }
+
+    /**
+     * @return how many blocks are used by the coarse test
+     */
+    int blocks() {
+        return blockX.length;
+    }
+
+    /**
+     * @param sums           block sums of the frame, they must cover the whole cue at the candidate position
+     * @param x              candidate x position in the frame
+     * @param y              candidate y position in the frame
+     * @param tolerance      the channel tolerance of the full resolution matcher
+     * @param mismatchBudget the mismatching pixels allowed by the full resolution matcher
+     * @return false if the cue can't match in the candidate position
+     */
+    boolean mayMatch(FrameSums sums, int x, int y, int tolerance, double mismatchBudget) {
+        int base = ((y - sums.y1) * sums.width) + (x - sums.x1);
+        int blockTolerance = tolerance * factor * factor;
+        int failedBlocks = 0;
+
+        for (int k = 0; k < blockX.length; k++) {
+            int idx = base + (blockY[k] * sums.width) + blockX[k];
+
+            if (
+                    Math.abs(sums.red[idx] - sumRed[k]) > blockTolerance ||
+                            Math.abs(sums.green[idx] - sumGreen[k]) > blockTolerance ||
+                            Math.abs(sums.blue[idx] - sumBlue[k]) > blockTolerance
+            ) {
+                failedBlocks++;
+
+                if (failedBlocks > mismatchBudget) return false;
+            }
+        }
+
+        return true;
+    }
+}
@@ -10,19 +10,29 @@ public class Cue {
     public String name;
     String path;
     BufferedImage im;
+    CueKernel kernel;
+    MatchProfile profile;
     Bounds bounds;
 
     @SuppressWarnings("unused")
     public Cue(String name, String path, BufferedImage im) {
         this.name = name;
         this.im = im;
+        this.kernel = CueKernel.fromImage(im);
+        this.profile = MatchProfile.DEFAULT;
         bounds = null;
     }
 
-    Cue(String name, String path, BufferedImage im, Bounds bounds) {
+    Cue(String name, String path, BufferedImage im, CueKernel kernel, Bounds bounds) {
+        this(name, path, im, kernel, MatchProfile.DEFAULT, bounds);
+    }
+
+    Cue(String name, String path, BufferedImage im, CueKernel kernel, MatchProfile profile, Bounds bounds) {
         this.name = name;
         this.path = path;
         this.im = im;
+        this.kernel = kernel;
+        this.profile = profile;
         this.bounds = bounds;
     }
 
@@ -30,6 +40,8 @@ public class Cue {
         this.name = cue.name;
         this.path = cue.path;
         this.im = cue.im;
+        this.kernel = cue.kernel;
+        this.profile = cue.profile;
         this.bounds = bounds;
     }
 
@@ -38,6 +50,7 @@ public class Cue {
         return "Cue [" +
                 "name='" + name + '\'' +
                 ", path='" + path + '\'' +
+                ", profile=" + profile +
                 ", bounds=" + bounds +
                 ']';
     }
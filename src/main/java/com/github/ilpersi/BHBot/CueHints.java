@@ -0,0 +1,117 @@
+package com.github.ilpersi.BHBot;
+
+import java.awt.image.BufferedImage;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Most cues are always found in the same position. When hints are enabled, the position of the last match of each cue
+ * is remembered and verified before searching the cue bounds: a hit costs the comparison of a single position, only
+ * on a miss the full search is performed.
+ * <p>
+ * Hints are stored by cue name, so copies of a cue with different bounds share the same hint. A hint is only used when
+ * it is inside the bounds of the current search.
+ */
+class CueHints {
+
+    private static class Hint {
+        private volatile int x;
+        private volatile int y;
+        private final LongAdder hits = new LongAdder();
+        private final LongAdder misses = new LongAdder();
+
+        Hint(int x, int y) {
+            this.x = x;
+            this.y = y;
+        }
+    }
+
+    private static final Map<String, Hint> hints = new ConcurrentHashMap<>();
+
+    private static boolean enabled = false;
+
+    static void setEnabled(boolean enabled) {
+        CueHints.enabled = enabled;
+        BHBotUnity.logger.debug("Cue position hints: " + (enabled ? "enabled" : "disabled"));
+    }
+
+    static boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Searches a cue verifying its last known position first.
+     *
+     * @param src   the image where to search the cue
+     * @param frame the decoded frame of src, may be null
+     * @param cue   the cue to search
+     * @param x1    search bounds, with the same meaning of FindSubimage parameters
+     * @return the found segment or null
+     */
+    static MarvinSegment find(BufferedImage src, Frame frame, Cue cue, int x1, int y1, int x2, int y2) {
+        Hint hint = hints.get(cue.name);
+        int endX = x2 == 0 ? src.getWidth() : x2;
+        int endY = y2 == 0 ? src.getHeight() : y2;
+
+        MarvinSegment seg;
+        if (hint != null && hint.x >= x1 && hint.x < endX && hint.y >= y1 && hint.y < endY) {
+            int hintX = hint.x, hintY = hint.y;
+            seg = search(src, frame, cue, hintX, hintY, hintX + 1, hintY + 1);
+
+            if (seg != null) {
+                hint.hits.increment();
+                return seg;
+            }
+            hint.misses.increment();
+        }
+
+        seg = search(src, frame, cue, x1, y1, x2, y2);
+
+        // when the cue is not on screen we keep the previous hint
+        if (seg != null) {
+            if (hint == null) {
+                hints.put(cue.name, new Hint(seg.x1, seg.y1));
+            } else {
+                hint.x = seg.x1;
+                hint.y = seg.y1;
+            }
+        }
+
+        return seg;
+    }
+
+    private static MarvinSegment search(BufferedImage src, Frame frame, Cue cue, int x1, int y1, int x2, int y2) {
+        return frame != null ? FindSubimage.findImage(frame, cue.kernel, cue.profile, x1, y1, x2, y2) : FindSubimage.findImage(src, cue.kernel, cue.profile, x1, y1, x2, y2);
+    }
+
+    /**
+     * Prints the hint hit rate of each cue, and the overall one.
+     */
+    static void printStats() {
+        if (hints.isEmpty()) {
+            BHBotUnity.logger.info("No cue position hints available at the moment.");
+            return;
+        }
+
+        StringBuilder statsMsg = new StringBuilder("Cue position hints:\n\n");
+        long totalHits = 0, totalChecks = 0;
+
+        for (Map.Entry<String, Hint> hintEntry : new TreeMap<>(hints).entrySet()) {
+            long hits = hintEntry.getValue().hits.sum();
+            long checks = hits + hintEntry.getValue().misses.sum();
+            totalHits += hits;
+            totalChecks += checks;
+
+            statsMsg.append(hintEntry.getKey()).append(" ").append(hitRateDesc(hits, checks)).append("\n");
+        }
+
+        statsMsg.append("\nTotal ").append(hitRateDesc(totalHits, totalChecks));
+        BHBotUnity.logger.info(statsMsg.toString());
+    }
+
+    private static String hitRateDesc(long hits, long checks) {
+        return String.format("hits: %d/%d (%.2f%%)", hits, checks, checks > 0 ? (hits * 100.0) / checks : 0.0);
+    }
+}
@@ -0,0 +1,297 @@
+package com.github.ilpersi.BHBot;
+
+import java.awt.image.BufferedImage;
+import java.util.Arrays;
+
+/**
+ * A pre-compiled version of a cue image used by FindSubimage. When a cue is loaded, its pixels are read only once and
+ * split in separate channel arrays. Transparent pixels are kept in a dedicated list, so that the matcher never visits
+ * them unless the treatTransparentAsObscured flag is used.
+ * <p>
+ * The first opaque pixels of the kernel are "anchors": the most distinctive pixels of the cue (rare colors, high
+ * contrast with their neighbours). As the matcher follows the kernel order, most of the wrong candidate positions are
+ * rejected after testing a few anchors instead of starting from the top-left corner of the cue.
+ */
+class CueKernel {
+
+    // How many anchor pixels are moved in front of the kernel
+    private static final int ANCHOR_COUNT = 4;
+
+    /**
+     * Pixel offsets depend on the width of the image we are searching in, so we cache them for the last used stride.
+     * Instances are immutable so that they can be safely shared between the bot threads.
+     */
+    private static class StrideOffsets {
+        private final int stride;
+        private final int[] opaque;
+        private final int[] transparent;
+
+        StrideOffsets(int stride, int[] opaque, int[] transparent) {
+            this.stride = stride;
+            this.opaque = opaque;
+            this.transparent = transparent;
+        }
+    }
+
+    // The original image, used for debug purposes
+    final BufferedImage image;
+    final int width;
+    final int height;
+
+    // Total number of pixels, including transparent ones. This is used to compute the similarity threshold
+    final int pixels;
+
+    // Coordinates and channels of the opaque pixels
+    final int[] opaqueX;
+    final int[] opaqueY;
+    final int[] red;
+    final int[] green;
+    final int[] blue;
+
+    // How many of the opaque pixels at the beginning of the kernel are anchors
+    final int anchors;
+
+    // Coordinates of the transparent pixels
+    final int[] transparentX;
+    final int[] transparentY;
+
+    // Row-major copy of the cue used by the vector matcher: channels and opacity (-1 for opaque, 0 for transparent)
+    final int[] rowRed;
+    final int[] rowGreen;
+    final int[] rowBlue;
+    final int[] rowOpaque;
+
+    private volatile StrideOffsets strideOffsets;
+
+    // Downsampled variant of the kernel, built the first time a coarse-to-fine search is performed
+    private volatile CoarseKernel coarse;
+    private volatile boolean coarseBuilt = false;
+
+    // Binary variant of the kernel for the last used black and white palette
+    private volatile BinaryKernel binary;
+
+    private CueKernel(BufferedImage image) {
+        this.image = image;
+        this.width = image.getWidth();
+        this.height = image.getHeight();
+        this.pixels = width * height;
+
+        int[] argb = image.getRGB(0, 0, width, height, null, 0, width);
+
+        rowRed = new int[pixels];
+        rowGreen = new int[pixels];
+        rowBlue = new int[pixels];
+        rowOpaque = new int[pixels];
+
+        int opaqueCnt = 0;
+        for (int i = 0; i < pixels; i++) {
+            rowRed[i] = (argb[i] >> 16) & 0xff;
+            rowGreen[i] = (argb[i] >> 8) & 0xff;
+            rowBlue[i] = argb[i] & 0xff;
+
+            if (((argb[i] >> 24) & 0xff) != 0) {
+                rowOpaque[i] = -1;
+                opaqueCnt++;
+            }
+        }
+
+        transparentX = new int[pixels - opaqueCnt];
+        transparentY = new int[pixels - opaqueCnt];
+
+        // opaque pixel indexes in row-major order
+        int[] opaqueIdxs = new int[opaqueCnt];
+        int opaqueIdx = 0, transparentIdx = 0;
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                int pixelIdx = (y * width) + x;
+
+                if (((argb[pixelIdx] >> 24) & 0xff) == 0) {
+                    transparentX[transparentIdx] = x;
+                    transparentY[transparentIdx] = y;
+                    transparentIdx++;
+                } else {
+                    opaqueIdxs[opaqueIdx++] = pixelIdx;
+                }
+            }
+        }
+
+        int[] anchorIdxs = pickAnchors(argb, opaqueIdxs);
+        anchors = anchorIdxs.length;
+
+        opaqueX = new int[opaqueCnt];
+        opaqueY = new int[opaqueCnt];
+        red = new int[opaqueCnt];
+        green = new int[opaqueCnt];
+        blue = new int[opaqueCnt];
+
+        // anchors first, followed by all the other opaque pixels in row-major order
+        boolean[] isAnchor = new boolean[pixels];
+        int kernelIdx = 0;
+        for (int anchorIdx : anchorIdxs) {
+            isAnchor[anchorIdx] = true;
+            addOpaquePixel(kernelIdx++, anchorIdx, argb[anchorIdx]);
+        }
+        for (int pixelIdx : opaqueIdxs) {
+            if (!isAnchor[pixelIdx]) addOpaquePixel(kernelIdx++, pixelIdx, argb[pixelIdx]);
+        }
+    }
+
+    private void addOpaquePixel(int kernelIdx, int pixelIdx, int pixel) {
+        opaqueX[kernelIdx] = pixelIdx % width;
+        opaqueY[kernelIdx] = pixelIdx / width;
+        red[kernelIdx] = (pixel >> 16) & 0xff;
+        green[kernelIdx] = (pixel >> 8) & 0xff;
+        blue[kernelIdx] = pixel & 0xff;
+    }
+
+    /**
+     * Anchors are picked scoring each opaque pixel by how rare its color is in the cue and by how much it differs from
+     * its neighbours. To avoid testing the same feature several times, anchors are kept apart from each other when
+     * possible.
+     *
+     * @param argb       the cue pixels
+     * @param opaqueIdxs indexes of the opaque pixels
+     * @return indexes of the anchor pixels
+     */
+    private int[] pickAnchors(int[] argb, int[] opaqueIdxs) {
+        if (opaqueIdxs.length <= ANCHOR_COUNT) return opaqueIdxs.clone();
+
+        // colors are bucketed, so that colors inside the matching tolerance count as the same one
+        int[] colorFrequency = new int[1 << 15];
+        for (int pixelIdx : opaqueIdxs) colorFrequency[colorBucket(argb[pixelIdx])]++;
+
+        double[] scores = new double[opaqueIdxs.length];
+        Integer[] order = new Integer[opaqueIdxs.length];
+        for (int i = 0; i < opaqueIdxs.length; i++) {
+            int pixelIdx = opaqueIdxs[i];
+            int x = pixelIdx % width, y = pixelIdx / width;
+
+            int contrast = 0;
+            if (x > 0) contrast = Math.max(contrast, colorDistance(argb[pixelIdx], argb[pixelIdx - 1]));
+            if (x < width - 1) contrast = Math.max(contrast, colorDistance(argb[pixelIdx], argb[pixelIdx + 1]));
+            if (y > 0) contrast = Math.max(contrast, colorDistance(argb[pixelIdx], argb[pixelIdx - width]));
+            if (y < height - 1) contrast = Math.max(contrast, colorDistance(argb[pixelIdx], argb[pixelIdx + width]));
+
+            double rarity = (double) opaqueIdxs.length / colorFrequency[colorBucket(argb[pixelIdx])];
+            scores[i] = rarity * (1 + contrast);
+            order[i] = i;
+        }
+        Arrays.sort(order, (a, b) -> Double.compare(scores[b], scores[a]));
+
+        int minDistance = Math.max(1, Math.min(width, height) / 4);
+        int[] result = new int[ANCHOR_COUNT];
+        int found = 0;
+
+        // first pass honours the minimum distance, second pass fills any remaining slot
+        for (int pass = 0; pass < 2 && found < ANCHOR_COUNT; pass++) {
+            for (int i = 0; i < order.length && found < ANCHOR_COUNT; i++) {
+                int pixelIdx = opaqueIdxs[order[i]];
+                boolean accepted = true;
+
+                for (int j = 0; j < found; j++) {
+                    int otherIdx = result[j];
+                    int distance = Math.max(Math.abs((pixelIdx % width) - (otherIdx % width)), Math.abs((pixelIdx / width) - (otherIdx / width)));
+                    if (otherIdx == pixelIdx || (pass == 0 && distance < minDistance)) {
+                        accepted = false;
+                        break;
+                    }
+                }
+
+                if (accepted) result[found++] = pixelIdx;
+            }
+        }
+
+        return result;
+    }
+
+    private static int colorBucket(int pixel) {
+        return (((pixel >> 19) & 0x1f) << 10) | (((pixel >> 11) & 0x1f) << 5) | ((pixel >> 3) & 0x1f);
+    }
+
+    /**
+     * @return the maximum channel difference between two pixels, transparent pixels are considered as fully different
+     */
+    private static int colorDistance(int pixel1, int pixel2) {
+        if (((pixel2 >> 24) & 0xff) == 0) return 255;
+
+        return Math.max(Math.abs(((pixel1 >> 16) & 0xff) - ((pixel2 >> 16) & 0xff)),
+                Math.max(Math.abs(((pixel1 >> 8) & 0xff) - ((pixel2 >> 8) & 0xff)),
+                        Math.abs((pixel1 & 0xff) - (pixel2 & 0xff))));
+    }
+
+    /**
+     * @param image The cue image to compile
+     * @return a new kernel or null if image is null
+     */
+    static CueKernel fromImage(BufferedImage image) {
+        return image == null ? null : new CueKernel(image);
+    }
+
+    /**
+     * @param stride the width of the image we are searching in
+     * @return offsets of the opaque pixels relative to the top-left corner of a candidate position
+     */
+    int[] opaqueOffsets(int stride) {
+        return getStrideOffsets(stride).opaque;
+    }
+
+    /**
+     * @param stride the width of the image we are searching in
+     * @return offsets of the transparent pixels relative to the top-left corner of a candidate position
+     */
+    int[] transparentOffsets(int stride) {
+        return getStrideOffsets(stride).transparent;
+    }
+
+    /**
+     * Cues of at least 16 pixels per side are downsampled by 4, cues of at least 8 pixels per side by 2. Smaller cues
+     * have no coarse variant.
+     *
+     * @return the coarse kernel or null if it is not available for this cue
+     */
+    CoarseKernel getCoarse() {
+        if (!coarseBuilt) {
+            int minSide = Math.min(width, height);
+            int factor = minSide >= 16 ? 4 : (minSide >= 8 ? 2 : 0);
+
+            coarse = factor > 0 ? CoarseKernel.fromKernel(this, factor) : null;
+            coarseBuilt = true;
+        }
+
+        return coarse;
+    }
+
+    /**
+     * @param blackRGB the black color of the image to search
+     * @param whiteRGB the white color of the image to search
+     * @return the binary kernel or null if the cue has pixels that are not close to any of the two colors
+     */
+    BinaryKernel getBinary(int blackRGB, int whiteRGB) {
+        BinaryKernel cached = binary;
+        if (cached == null || cached.blackRGB != blackRGB || cached.whiteRGB != whiteRGB) {
+            cached = BinaryKernel.fromKernel(this, blackRGB, whiteRGB);
+            binary = cached;
+        }
+
+        return cached.isAvailable() ? cached : null;
+    }
+
+    private StrideOffsets getStrideOffsets(int stride) {
+        StrideOffsets cached = strideOffsets;
+        if (cached != null && cached.stride == stride) return cached;
+
+        int[] opaque = new int[opaqueX.length];
+        for (int i = 0; i < opaque.length; i++) {
+            opaque[i] = (opaqueY[i] * stride) + opaqueX[i];
+        }
+
+        int[] transparent = new int[transparentX.length];
+        for (int i = 0; i < transparent.length; i++) {
+            transparent[i] = (transparentY[i] * stride) + transparentX[i];
+        }
+
+        cached = new StrideOffsets(stride, opaque, transparent);
+        strideOffsets = cached;
+        return cached;
+    }
+}
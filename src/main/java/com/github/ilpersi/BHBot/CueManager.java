@@ -20,10 +20,12 @@ class CueManager {
     private static class CueData {
         private final String cuePath;
         private final Bounds cueBounds;
+        private final MatchProfile profile;
 
-        CueData(String cuePath, Bounds cueBounds) {
+        CueData(String cuePath, Bounds cueBounds, MatchProfile profile) {
             this.cuePath = cuePath;
             this.cueBounds = cueBounds;
+            this.profile = profile;
         }
     }
 
@@ -41,6 +43,10 @@ class CueManager {
         }
     }
 
+    // Cues drawn over the animated battle scene or animated in by Unity: some of their pixels can be blended with the
+    // background when the screen is captured, so up to 3% of them are allowed to mismatch
+    private static final MatchProfile UNITY_JITTER = MatchProfile.fromSimilarity(0.97);
+
     private Map<String, CueData> addedCues = new HashMap<>();
     private final Map<String, Cue> loadedCues = new HashMap<>();
     private final ClassLoader classLoader = CueManager.class.getClassLoader();
@@ -50,7 +56,14 @@ class CueManager {
     }
 
     private void addCue(String cueKey, String cuePath, Bounds cueBounds) {
-        addedCues.put(cueKey, new CueData(cuePath, cueBounds));
+        addCue(cueKey, cuePath, cueBounds, MatchProfile.DEFAULT);
+    }
+
+    /**
+     * @param profile How the cue is matched, use this for cues that need a different tolerance or similarity
+     */
+    private void addCue(String cueKey, String cuePath, Bounds cueBounds, MatchProfile profile) {
+        addedCues.put(cueKey, new CueData(cuePath, cueBounds, profile));
     }
 
     Cue get(String cueKey) {
@@ -72,7 +85,8 @@ class CueManager {
                 cueImg = loadImage(classLoader, cueData.cuePath);
             }
 
-            loadedCues.put(cueKey, new Cue(cueKey, cueData.cuePath, cueImg, cueData.cueBounds));
+            // the cue is compiled only once, so that FindSubimage never has to read its pixels again
+            loadedCues.put(cueKey, new Cue(cueKey, cueData.cuePath, cueImg, CueKernel.fromImage(cueImg), cueData.profile, cueData.cueBounds));
 
             // once we loaded the cue, we don't need the data anymore
             addedCues.remove(cueKey);
@@ -291,8 +305,8 @@ class CueManager {
 
         addCue("Clear", "cues/cueClear.png", null); //clear team button
 
-        addCue("AutoOn", "cues/cueAutoOn.png", new Bounds(740, 180, 785, 220)); // cue for auto pilot on
-        addCue("AutoOff", "cues/cueAutoOff.png", new Bounds(740, 180, 785, 220)); // cue for auto pilot off
+        addCue("AutoOn", "cues/cueAutoOn.png", new Bounds(740, 180, 785, 220), UNITY_JITTER); // cue for auto pilot on
+        addCue("AutoOff", "cues/cueAutoOff.png", new Bounds(740, 180, 785, 220), UNITY_JITTER); // cue for auto pilot off
 
         addCue("CloseGreen", "cues/cueCloseGreen.png", null); // close button used with "You have been defeated" popup in gauntlet and also "Victory" window in gauntlet
 
@@ -525,13 +539,13 @@ class CueManager {
         addCue("TeamAccept", "unitycues/common/cueTeamAccept.png", Bounds.fromWidthHeight(445, 440, 145, 55)); // raid accept button
         addCue("AreYouThere", "unitycues/common/cueAreYouThere.png", Bounds.fromWidthHeight(295, 225, 220, 80)); // Are you there popup
         addCue("Yes", "unitycues/common/cueYes.png", Bounds.fromWidthHeight(355, 335, 90, 55)); // Yes button on Are you there popup
-        addCue("SpeedBar", "unitycues/common/cueSpeedBar.png", Bounds.fromWidthHeight(0, 455, 75, 60)); // Speed selection bar when you are in encounters
-        addCue("SpeedTXT", "unitycues/common/cueSpeedTXT.png", Bounds.fromWidthHeight(5, 495, 65, 35)); // Speed text while in a fight
-        addCue("ClearedRecap", "unitycues/common/cueClearedRecap.png", Bounds.fromWidthHeight(320, 55, 165, 50)); // Cleared message on top of the victory recap screen
+        addCue("SpeedBar", "unitycues/common/cueSpeedBar.png", Bounds.fromWidthHeight(0, 455, 75, 60), UNITY_JITTER); // Speed selection bar when you are in encounters
+        addCue("SpeedTXT", "unitycues/common/cueSpeedTXT.png", Bounds.fromWidthHeight(5, 495, 65, 35), UNITY_JITTER); // Speed text while in a fight
+        addCue("ClearedRecap", "unitycues/common/cueClearedRecap.png", Bounds.fromWidthHeight(320, 55, 165, 50), UNITY_JITTER); // Cleared message on top of the victory recap screen
         addCue("Rerun", "unitycues/common/cueRerun.png", Bounds.fromWidthHeight(86, 445, 641, 57)); // Green "Rerun" button on the victory recap screen
         addCue("Town", "unitycues/common/cueTown.png", Bounds.fromWidthHeight(365, 455, 210, 50)); // The Red "Town" button on the victory/defeat recap screen
-        addCue("VictoryRecap", "unitycues/common/cueVictoryRecap.png", Bounds.fromWidthHeight(335, 60, 135, 45)); // Victory message when completing adventures
-        addCue("DefeatRecap", "unitycues/common/cueDefeatRecap.png", Bounds.fromWidthHeight(335, 55, 135, 50)); // Defeat message when completing adventures
+        addCue("VictoryRecap", "unitycues/common/cueVictoryRecap.png", Bounds.fromWidthHeight(335, 60, 135, 45), UNITY_JITTER); // Victory message when completing adventures
+        addCue("DefeatRecap", "unitycues/common/cueDefeatRecap.png", Bounds.fromWidthHeight(335, 55, 135, 50), UNITY_JITTER); // Defeat message when completing adventures
         addCue("WeeklyRewards", "unitycues/common/cueWeeklyRewards.png", Bounds.fromWidthHeight(205, 135, 395, 255)); // Weekly rewards gump
         addCue("TopChoice", "unitycues/common/cueTopChoice.png", null); // Top Choice border in selection windows
         addCue("Play", "unitycues/common/cuePlay.png", Bounds.fromWidthHeight(510, 260, 80, 40)); // Blue Play button.
@@ -566,8 +580,8 @@ class CueManager {
         //region Familiar
         // region Familiar encounters
         addCue("FamiliarEncounter", "unitycues/familiarEncounter/cueEncounter.png", Bounds.fromWidthHeight(130, 265, 45, 55));
-        addCue("Persuade", "unitycues/familiarEncounter/cuePersuade.png", Bounds.fromWidthHeight(120, 315, 160, 55));
-        addCue("Bribe", "unitycues/familiarEncounter/cueBribe.png", Bounds.fromWidthHeight(540, 315, 120, 55));
+        addCue("Persuade", "unitycues/familiarEncounter/cuePersuade.png", Bounds.fromWidthHeight(120, 315, 160, 55), UNITY_JITTER);
+        addCue("Bribe", "unitycues/familiarEncounter/cueBribe.png", Bounds.fromWidthHeight(540, 315, 120, 55), UNITY_JITTER);
         addCue("DeclineRed", "unitycues/familiarEncounter/cueDeclineRed.png", Bounds.fromWidthHeight(240, 430, 135, 50)); // decline persuation attempts
         addCue("YouCurrentlyOwn", "unitycues/familiarEncounter/cueYouCurrentlyOwn.png", Bounds.fromWidthHeight(135, 395, 275, 40)); // You currently own text in familiar encounters
         addCue("CaptureSuccess", "unitycues/familiarEncounter/cueCaptureSuccess.png", null); // Capture Successful text in familiar encounters
@@ -831,13 +845,16 @@ class CueManager {
     void overrideCueFromFile(String cueKey, String cuePath, @SuppressWarnings("SameParameterValue") Bounds cueBounds) {
 
         Bounds oldBounds;
+        MatchProfile oldProfile;
         boolean isLoaded = false;
 
         if (loadedCues.containsKey(cueKey)) {
             oldBounds = loadedCues.get(cueKey).bounds;
+            oldProfile = loadedCues.get(cueKey).profile;
             isLoaded = true;
         } else if (addedCues.containsKey(cueKey)) {
             oldBounds = addedCues.get(cueKey).cueBounds;
+            oldProfile = addedCues.get(cueKey).profile;
         } else {
             BHBotUnity.logger.info("No cue found to override, skipping.");
             return;
@@ -861,7 +878,7 @@ class CueManager {
             return;
         }
 
-        loadedCues.put(cueKey, new Cue(cueKey, null, newCueImg, cueBounds != null ? cueBounds : oldBounds));
+        loadedCues.put(cueKey, new Cue(cueKey, null, newCueImg, CueKernel.fromImage(newCueImg), oldProfile, cueBounds != null ? cueBounds : oldBounds));
         if (!isLoaded) {
             addedCues.remove(cueKey);
         }
@@ -896,7 +913,7 @@ class CueManager {
             String reloadPath = relativePath + oldCue.path;
             String newPath = new File(reloadPath).exists() ? reloadPath : oldCue.path;
 
-            CueData newDetails = new CueData(newPath, oldCue.bounds);
+            CueData newDetails = new CueData(newPath, oldCue.bounds, oldCue.profile);
             newAddedCues.put(loadedCue.getKey(), newDetails);
         }
 
@@ -906,7 +923,7 @@ class CueManager {
             String reloadPath = relativePath + oldData.cuePath;
             String newPath = new File(reloadPath).exists() ? reloadPath : oldData.cuePath;
 
-            CueData newData = new CueData(newPath, oldData.cueBounds);
+            CueData newData = new CueData(newPath, oldData.cueBounds, oldData.profile);
 
             newAddedCues.put(addedCue.getKey(), newData);
         }
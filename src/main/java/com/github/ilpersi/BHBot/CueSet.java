@@ -0,0 +1,196 @@
+package com.github.ilpersi.BHBot;
+
+import java.util.*;
+
+/**
+ * A set of cues that are searched together on the same frame. All the cues read the decoded pixels of the frame, cues
+ * whose search areas overlap are grouped together and each group is traversed a single time, testing all the cues of
+ * the group at every candidate position.
+ * <p>
+ * This is intended for sweeps like the one performed by the BlockerThread, where many popups are checked on each tick.
+ */
+class CueSet {
+
+    /**
+     * The search area of a cue, already clamped to the frame
+     */
+    private static class SearchArea {
+        // position of the cue in the set
+        private final int cueIdx;
+        private final Cue cue;
+        private final int startX, startY, endX, endY;
+
+        // Area of the frame read by this search: candidate positions plus the cue size
+        private final int regionX2, regionY2;
+
+        SearchArea(int cueIdx, Cue cue, int startX, int startY, int endX, int endY, int regionX2, int regionY2) {
+            this.cueIdx = cueIdx;
+            this.cue = cue;
+            this.startX = startX;
+            this.startY = startY;
+            this.endX = endX;
+            this.endY = endY;
+            this.regionX2 = regionX2;
+            this.regionY2 = regionY2;
+        }
+
+        boolean overlaps(SearchArea other) {
+            return startX < other.regionX2 && other.startX < regionX2 && startY < other.regionY2 && other.startY < regionY2;
+        }
+    }
+
+    private final List<Cue> cues;
+
+    CueSet(Cue... cues) {
+        this(Arrays.asList(cues));
+    }
+
+    CueSet(List<Cue> cues) {
+        this.cues = new ArrayList<>(cues);
+    }
+
+    /**
+     * Reads the screen once and searches all the cues of the set on it.
+     *
+     * @param browserManager The browser manager used to read the screen
+     * @return a map with cue names as keys and found segments as values. Cues not found are not part of the map
+     */
+    Map<String, MarvinSegment> fromScreen(BrowserManager browserManager) {
+        browserManager.readScreen();
+        return find(browserManager.getFrame(), browserManager);
+    }
+
+    /**
+     * Searches all the cues of the set in the same frame. The first occurrence of each cue is returned, exactly as
+     * MarvinSegment.findSubimage would do. Results are shared with the single cue searches through DetectionMemo: cues
+     * already searched on the frame are not searched again.
+     *
+     * @param frame          The frame where to search the cues
+     * @param browserManager The browser manager, used to compute the search bounds of the cues
+     * @return a map with cue names as keys and found segments as values. Cues not found are not part of the map
+     */
+    Map<String, MarvinSegment> find(Frame frame, BrowserManager browserManager) {
+        Map<String, MarvinSegment> result = new LinkedHashMap<>();
+
+        // Debug features are implemented in MarvinSegment, so we search the cues one by one
+        if (BHBotUnity.debugFindImage || BHBotUnity.debugNullBounds) {
+            for (Cue cue : cues) {
+                MarvinSegment seg = MarvinSegment.findSubimage(frame, cue, browserManager);
+                if (seg != null) result.put(cue.name, seg);
+            }
+            return result;
+        }
+
+        long timer = Misc.getTime();
+
+        int imgInWidth = frame.width;
+        int imgInHeight = frame.height;
+        int[] imageInRGB = frame.pixels;
+
+        Bounds[] searchBounds = new Bounds[cues.size()];
+        MarvinSegment[] found = new MarvinSegment[cues.size()];
+        boolean[] memoized = new boolean[cues.size()];
+        for (int i = 0; i < cues.size(); i++) {
+            searchBounds[i] = MarvinSegment.getSearchBounds(cues.get(i), browserManager);
+
+            MarvinSegment seg = DetectionMemo.lookup(frame, cues.get(i), searchBounds[i]);
+            if (seg != null) {
+                memoized[i] = true;
+                found[i] = seg != DetectionMemo.MISS ? seg : null;
+            }
+        }
+
+        List<List<SearchArea>> groups = buildGroups(frame, searchBounds, memoized);
+
+        for (List<SearchArea> group : groups) {
+            int groupX1 = Integer.MAX_VALUE, groupY1 = Integer.MAX_VALUE, groupX2 = 0, groupY2 = 0;
+            int[][] opaqueOffsets = new int[group.size()][];
+            int[][] transparentOffsets = new int[group.size()][];
+            double[] mismatchBudgets = new double[group.size()];
+            boolean[] done = new boolean[group.size()];
+            int pending = group.size();
+
+            for (int i = 0; i < group.size(); i++) {
+                SearchArea area = group.get(i);
+                groupX1 = Math.min(groupX1, area.startX);
+                groupY1 = Math.min(groupY1, area.startY);
+                groupX2 = Math.max(groupX2, area.endX);
+                groupY2 = Math.max(groupY2, area.endY);
+                MatchProfile profile = area.cue.profile;
+                opaqueOffsets[i] = area.cue.kernel.opaqueOffsets(imgInWidth);
+                transparentOffsets[i] = profile.treatTransparentAsObscured ? area.cue.kernel.transparentOffsets(imgInWidth) : FindSubimage.NO_OFFSETS;
+                mismatchBudgets[i] = profile.mismatchBudget(area.cue.kernel);
+            }
+
+            groupLoop:
+            for (int y = groupY1; y < groupY2; y++) {
+                for (int x = groupX1; x < groupX2; x++) {
+                    for (int i = 0; i < group.size(); i++) {
+                        if (done[i]) continue;
+
+                        SearchArea area = group.get(i);
+                        CueKernel kernel = area.cue.kernel;
+                        if (x < area.startX || x >= area.endX || y < area.startY || y >= area.endY) continue;
+                        if (y + kernel.height >= imgInHeight || x + kernel.width >= imgInWidth) continue;
+
+                        MatchProfile profile = area.cue.profile;
+                        if (FindSubimage.matchesAt(imageInRGB, imgInWidth, (y * imgInWidth) + x, kernel, opaqueOffsets[i], transparentOffsets[i],
+                                profile.tolerance, mismatchBudgets[i], profile.treatTransparentAsObscured)) {
+                            found[area.cueIdx] = new MarvinSegment(x, y, x + kernel.width, y + kernel.height);
+                            done[i] = true;
+                            if (--pending == 0) break groupLoop;
+                        }
+                    }
+                }
+            }
+        }
+
+        for (int i = 0; i < cues.size(); i++) {
+            if (!memoized[i]) DetectionMemo.store(frame, cues.get(i), searchBounds[i], found[i]);
+            if (found[i] != null) result.put(cues.get(i).name, found[i]);
+        }
+
+        if (BHBotUnity.debugDetectionTimes) {
+            BHBotUnity.logger.debug("cue set detection time: " + (Misc.getTime() - timer) + "ms (" + cues.size() + " cues, " + groups.size() + " groups) " + result.keySet());
+        }
+
+        return result;
+    }
+
+    /**
+     * Cues are grouped when the frame regions they read overlap, so that each group is traversed only once. Memoized
+     * cues are not part of any group.
+     */
+    private List<List<SearchArea>> buildGroups(Frame frame, Bounds[] searchBounds, boolean[] memoized) {
+        int imgInWidth = frame.width;
+        int imgInHeight = frame.height;
+
+        List<List<SearchArea>> groups = new ArrayList<>();
+        for (int cueIdx = 0; cueIdx < cues.size(); cueIdx++) {
+            if (memoized[cueIdx]) continue;
+
+            Cue cue = cues.get(cueIdx);
+            Bounds bounds = searchBounds[cueIdx];
+
+            int endX = bounds.x2 == 0 ? imgInWidth : Math.min(bounds.x2, imgInWidth);
+            int endY = bounds.y2 == 0 ? imgInHeight : Math.min(bounds.y2, imgInHeight);
+            SearchArea area = new SearchArea(cueIdx, cue, bounds.x1, bounds.y1, endX, endY,
+                    Math.min(endX + cue.kernel.width, imgInWidth), Math.min(endY + cue.kernel.height, imgInHeight));
+
+            // the new area may join several existing groups together
+            List<SearchArea> merged = new ArrayList<>();
+            merged.add(area);
+            Iterator<List<SearchArea>> groupIt = groups.iterator();
+            while (groupIt.hasNext()) {
+                List<SearchArea> group = groupIt.next();
+                if (group.stream().anyMatch(area::overlaps)) {
+                    merged.addAll(group);
+                    groupIt.remove();
+                }
+            }
+            groups.add(merged);
+        }
+
+        return groups;
+    }
+}
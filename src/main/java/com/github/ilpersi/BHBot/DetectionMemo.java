@@ -0,0 +1,148 @@
+package com.github.ilpersi.BHBot;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * During a single tick the same cue is often searched more than once on the same frame (e.g. GuildButton is checked by
+ * processDungeon, AutoRuneManager and AutoShrineManager). As frames never change, the result of each detection is
+ * stored in the frame itself, keyed by cue name and effective search bounds, and returned to the following searches
+ * until the next readScreen creates a new frame.
+ * <p>
+ * Misses are stored too, so a cue that is not on screen is also searched only once for each frame.
+ * <p>
+ * When a cue was not searched on the frame yet, the result found on the previous frame is reused if all the screen
+ * tiles covered by the search are unchanged (see Frame.isUnchanged). This makes polling loops like
+ * MarvinSegment.fromCue and waitForNull nearly free while the screen is not changing.
+ */
+class DetectionMemo {
+
+    // Stored for the searches where the cue was not found, as ConcurrentHashMap does not allow null values. It is also
+    // returned by lookup for the memoized misses
+    static final MarvinSegment MISS = new MarvinSegment(-1, -1, -1, -1);
+
+    private static class Counters {
+        private final LongAdder hits = new LongAdder();
+        private final LongAdder unchanged = new LongAdder();
+        private final LongAdder misses = new LongAdder();
+    }
+
+    private static final Map<String, Counters> counters = new ConcurrentHashMap<>();
+
+    /**
+     * Returns the memoized result of a cue detection on the frame, performing the detection only the first time.
+     *
+     * @param frame  the frame where the cue is searched
+     * @param cue    the cue to search
+     * @param bounds the effective search bounds
+     * @param search the detection to run when the result is not available yet
+     * @return the found segment or null
+     */
+    static MarvinSegment find(Frame frame, Cue cue, Bounds bounds, Supplier<MarvinSegment> search) {
+        MarvinSegment seg = lookup(frame, cue, bounds);
+        if (seg == null) {
+            seg = search.get();
+            store(frame, cue, bounds, seg);
+        }
+
+        return seg == MISS ? null : seg;
+    }
+
+    /**
+     * Returns the memoized result of a cue detection without performing it. Used by searches that detect many cues at
+     * once (see CueSet), that must store their results with store.
+     *
+     * @param frame  the frame where the cue is searched
+     * @param cue    the cue to search
+     * @param bounds the effective search bounds
+     * @return the found segment, MISS if the cue is known not to be on the frame or null if it was not searched yet
+     */
+    static MarvinSegment lookup(Frame frame, Cue cue, Bounds bounds) {
+        String key = key(cue, bounds);
+        Counters cueCounters = counters.computeIfAbsent(cue.name, k -> new Counters());
+
+        MarvinSegment seg = frame.detections.get(key);
+        if (seg != null) {
+            cueCounters.hits.increment();
+            return seg;
+        }
+
+        seg = fromPrevious(frame, cue, bounds, key);
+        if (seg != null) {
+            cueCounters.unchanged.increment();
+            frame.detections.put(key, seg);
+            return seg;
+        }
+
+        cueCounters.misses.increment();
+        return null;
+    }
+
+    /**
+     * Stores the result of a cue detection that was not memoized yet.
+     *
+     * @param seg the found segment, null if the cue was not found
+     */
+    static void store(Frame frame, Cue cue, Bounds bounds, MarvinSegment seg) {
+        frame.detections.put(key(cue, bounds), seg != null ? seg : MISS);
+    }
+
+    private static String key(Cue cue, Bounds bounds) {
+        return cue.name + "@" + bounds.x1 + "," + bounds.y1 + "," + bounds.x2 + "," + bounds.y2;
+    }
+
+    /**
+     * @return the result of the same detection on the previous frame if the searched area did not change, otherwise null
+     */
+    private static MarvinSegment fromPrevious(Frame frame, Cue cue, Bounds bounds, String key) {
+        Frame previous = frame.getPrevious();
+        if (previous == null) return null;
+
+        MarvinSegment seg = previous.detections.get(key);
+        if (seg == null) return null;
+
+        // the searched area covers the whole cue at each candidate position
+        int x2 = (bounds.x2 == 0 ? frame.width : bounds.x2) + cue.kernel.width;
+        int y2 = (bounds.y2 == 0 ? frame.height : bounds.y2) + cue.kernel.height;
+        return frame.isUnchanged(previous, bounds.x1, bounds.y1, x2, y2) ? seg : null;
+    }
+
+    /**
+     * Prints how many detections of each cue were served from the memo, and the overall number.
+     */
+    static void printStats() {
+        if (counters.isEmpty()) {
+            BHBotUnity.logger.info("No cue detections memoized at the moment.");
+            return;
+        }
+
+        StringBuilder statsMsg = new StringBuilder("Detection memo:\n\n");
+        long totalHits = 0, totalUnchanged = 0, totalSearches = 0;
+
+        for (Map.Entry<String, Counters> counterEntry : new TreeMap<>(counters).entrySet()) {
+            long hits = counterEntry.getValue().hits.sum();
+            long unchanged = counterEntry.getValue().unchanged.sum();
+            long searches = hits + unchanged + counterEntry.getValue().misses.sum();
+            totalHits += hits;
+            totalUnchanged += unchanged;
+            totalSearches += searches;
+
+            statsMsg.append(counterEntry.getKey()).append(" ").append(hitRateDesc(hits, unchanged, searches)).append("\n");
+        }
+
+        statsMsg.append("\nTotal ").append(hitRateDesc(totalHits, totalUnchanged, totalSearches));
+        BHBotUnity.logger.info(statsMsg.toString());
+    }
+
+    private static String hitRateDesc(long hits, long unchanged, long searches) {
+        return String.format("memoized: %d/%d (%.2f%%) unchanged screen: %d/%d (%.2f%%)", hits, searches, percentage(hits, searches),
+                unchanged, searches, percentage(unchanged, searches));
+    }
+
+    private static double percentage(long value, long total) {
+        return total > 0 ? (value * 100.0) / total : 0.0;
+    }
+}
@@ -79,7 +79,7 @@ public final class EncounterManager {
 
         BHBotUnity.logger.autobribe("Familiar encountered");
 
-        FamiliarType familiarLevel = getFamiliarType(bot.browser.getImg());
+        FamiliarType familiarLevel = getFamiliarType(bot.browser.getFrame());
 
         PersuationType persuasion;
         BribeSettings bribeInfo = new BribeSettings();
@@ -370,7 +370,11 @@ public final class EncounterManager {
         // if (familiarTxtColor == 0 ) return null;
         if (familiarTxtCol == null) return null;
 
-        BufferedImage nameImgRect = screenImg.getSubimage(MD5_NAME_BOUNDS.x1, MD5_NAME_BOUNDS.y1, MD5_NAME_BOUNDS.width, MD5_NAME_BOUNDS.height);
+        // the name pixels are changed below, so they are copied instead of using a sub image of the screen
+        BufferedImage nameImgRect = new BufferedImage(MD5_NAME_BOUNDS.width, MD5_NAME_BOUNDS.height, BufferedImage.TYPE_INT_RGB);
+        nameImgRect.setRGB(0, 0, MD5_NAME_BOUNDS.width, MD5_NAME_BOUNDS.height,
+                screenImg.getRGB(MD5_NAME_BOUNDS.x1, MD5_NAME_BOUNDS.y1, MD5_NAME_BOUNDS.width, MD5_NAME_BOUNDS.height, null, 0, MD5_NAME_BOUNDS.width),
+                0, MD5_NAME_BOUNDS.width);
 
         int minX = nameImgRect.getWidth();
         int minY = nameImgRect.getHeight();
@@ -563,13 +567,13 @@ public final class EncounterManager {
         BHBotUnity.logger.warn(MessageFormat.format("Familiar name not found: {0}", famName));
     }
 
-    static FamiliarType getFamiliarType(BufferedImage encounterImg) {
-        int[] encounterImgInRGB = encounterImg.getRGB(MD5_NAME_BOUNDS.x1, MD5_NAME_BOUNDS.y1, MD5_NAME_BOUNDS.width, MD5_NAME_BOUNDS.height, null, 0, MD5_NAME_BOUNDS.width);
+    static FamiliarType getFamiliarType(Frame encounterFrame) {
+        int[] encounterImgInRGB = encounterFrame.pixels;
 
         for (int i = 0; i < MD5_NAME_BOUNDS.height; i++) {
             for (int j = 0; j < MD5_NAME_BOUNDS.width; j++) {
 
-                int imgIndex = (i * MD5_NAME_BOUNDS.width) + j;
+                int imgIndex = ((MD5_NAME_BOUNDS.y1 + i) * encounterFrame.width) + MD5_NAME_BOUNDS.x1 + j;
 
                 int pixelRed = (encounterImgInRGB[imgIndex] >> 16) & 0xff;
                 int pixelGreen = (encounterImgInRGB[imgIndex] >> 8) & 0xff;
@@ -3,6 +3,9 @@ package com.github.ilpersi.BHBot;
 import java.awt.image.BufferedImage;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * Copied from:
@@ -16,14 +19,155 @@ import java.util.List;
  */
 class FindSubimage {
 
-	static MarvinSegment findImage(BufferedImage imageIn, BufferedImage subImage, int startX, int startY, int endX, int endY) {
-        List<MarvinSegment> r = findSubimage(imageIn, subImage, 1.0, false, false, startX, startY, endX, endY);
-        return r.isEmpty() ? null : r.get(0);
+    /**
+     * An alternative cue matching backend, with the same semantics of scalarMatch. See VectorMatcher.
+     */
+    interface Matcher {
+        boolean matches(int[] imageInRGB, int stride, int base, CueKernel kernel, int[] opaqueOffsets, int tolerance, double mismatchBudget, boolean treatTransparentAsObscured);
+    }
+
+    // When not null, cue matching is performed by this backend
+    private static Matcher vectorMatcher = null;
+
+    // Searches covering at least this many candidate positions are split in horizontal bands
+    private static final int PARALLEL_MIN_AREA = 300 * 200;
+    // Bands smaller than this are not worth a task
+    private static final int MIN_BAND_ROWS = 20;
+
+    // Exact searches covering at least this many candidate positions use the coarse-to-fine filter
+    private static final int PYRAMID_MIN_AREA = 200 * 200;
+
+    // Pool used to search bands in parallel, null when parallel search is disabled
+    private static ForkJoinPool bandPool = null;
+
+    // Used when transparent pixels are not visited
+    static final int[] NO_OFFSETS = new int[0];
+
+    /**
+     * Buffers reused by all the searches performed on the same thread, so that in steady state a search does not
+     * allocate anything but the segments it returns.
+     */
+    private static class Scratch {
+        // Frame pixels with the same stride of the frame: only the region read by the last search is up to date
+        private int[] pixels = NO_OFFSETS;
+        private final List<MarvinSegment> firstMatch = new ArrayList<>(1);
+    }
+
+    private static final ThreadLocal<Scratch> scratch = ThreadLocal.withInitial(Scratch::new);
+
+    /**
+     * Enables or disables the Vector API matching backend. The backend relies on the jdk.incubator.vector module, if the
+     * JVM was not started with "--add-modules jdk.incubator.vector" the scalar matcher is used as fallback.
+     *
+     * @param enabled true to use the vector backend
+     */
+    static void setVectorBackend(boolean enabled) {
+        if (enabled && ModuleLayer.boot().findModule("jdk.incubator.vector").isEmpty()) {
+            BHBotUnity.logger.warn("Vector matching is enabled, but module jdk.incubator.vector is not available. " +
+                    "Add '--add-modules jdk.incubator.vector' to the java command line to use it. Falling back to scalar matching.");
+            enabled = false;
+        }
+
+        // VectorMatcher is compiled on its own, so that the rest of the bot does not depend on the incubator module
+        Matcher matcher = null;
+        if (enabled) {
+            try {
+                matcher = Class.forName("com.github.ilpersi.BHBot.VectorMatcher").asSubclass(Matcher.class).getDeclaredConstructor().newInstance();
+            } catch (ReflectiveOperationException | LinkageError e) {
+                BHBotUnity.logger.warn("Vector matching is enabled, but it is not available in this build. Falling back to scalar matching.", e);
+            }
+        }
+
+        vectorMatcher = matcher;
+        BHBotUnity.logger.debug("Cue matching backend: " + (vectorMatcher != null ? "vector" : "scalar"));
+    }
+
+    /**
+     * Large searches (usually cues with null bounds) can be split in horizontal bands that are searched in parallel.
+     *
+     * @param threads how many threads are used to search bands. Values lower than 2 disable the parallel search
+     */
+    static void setSearchThreads(int threads) {
+        if (bandPool != null) bandPool.shutdown();
+
+        bandPool = threads > 1 ? new ForkJoinPool(threads) : null;
+        BHBotUnity.logger.debug("Cue search threads: " + Math.max(threads, 1));
+    }
+
+    static MarvinSegment findImage(BufferedImage imageIn, BufferedImage subImage, int startX, int startY, int endX, int endY) {
+        return findImage(imageIn, CueKernel.fromImage(subImage), startX, startY, endX, endY);
+    }
+
+    static MarvinSegment findImage(BufferedImage imageIn, CueKernel kernel, int startX, int startY, int endX, int endY) {
+        return findFirst(imageIn, null, kernel, MatchProfile.DEFAULT, startX, startY, endX, endY);
+    }
+
+    /**
+     * Same as findImage on a BufferedImage, but the already decoded pixels of the frame are used.
+     */
+    static MarvinSegment findImage(Frame frame, CueKernel kernel, int startX, int startY, int endX, int endY) {
+        return findFirst(frame.image, frame, kernel, MatchProfile.DEFAULT, startX, startY, endX, endY);
+    }
+
+    static MarvinSegment findImage(BufferedImage imageIn, CueKernel kernel, MatchProfile profile, int startX, int startY, int endX, int endY) {
+        return findFirst(imageIn, null, kernel, profile, startX, startY, endX, endY);
+    }
+
+    static MarvinSegment findImage(Frame frame, CueKernel kernel, MatchProfile profile, int startX, int startY, int endX, int endY) {
+        return findFirst(frame.image, frame, kernel, profile, startX, startY, endX, endY);
+    }
+
+    private static MarvinSegment findFirst(BufferedImage imageIn, Frame frame, CueKernel kernel, MatchProfile profile, int startX, int startY, int endX, int endY) {
+        List<MarvinSegment> r = scratch.get().firstMatch;
+        r.clear();
+        search(imageIn, frame, kernel, profile, false, startX, startY, endX, endY, r);
+
+        MarvinSegment seg = r.isEmpty() ? null : r.get(0);
+        r.clear();
+        return seg;
+    }
+
+    /**
+     * Reads a region of the frame in the thread-local pixel buffer. The buffer has the same stride of the frame, so
+     * kernel offsets can be used as they are; pixels outside the region are stale and must not be read.
+     *
+     * @param imageIn the frame
+     * @param x1      left side of the region
+     * @param y1      top side of the region
+     * @param x2      right side of the region (excluded)
+     * @param y2      bottom side of the region (excluded)
+     * @return the buffer, indexed as (y * frame width) + x
+     */
+    private static int[] readRegion(BufferedImage imageIn, int x1, int y1, int x2, int y2) {
+        Scratch s = scratch.get();
+        int imgInWidth = imageIn.getWidth();
+        int imgInHeight = imageIn.getHeight();
+
+        if (s.pixels.length < imgInWidth * imgInHeight) s.pixels = new int[imgInWidth * imgInHeight];
+
+        x1 = Math.max(0, x1);
+        y1 = Math.max(0, y1);
+        x2 = Math.min(imgInWidth, x2);
+        y2 = Math.min(imgInHeight, y2);
+        if (x2 > x1 && y2 > y1) {
+            imageIn.getRGB(x1, y1, x2 - x1, y2 - y1, s.pixels, (y1 * imgInWidth) + x1, imgInWidth);
+        }
+
+        return s.pixels;
+    }
+
+    /**
+     * Compatibility version of findSubimage for images that are not part of the CueManager: the sub image is compiled
+     * to a CueKernel on each call.
+     */
+    @SuppressWarnings("SameParameterValue")
+    static List<MarvinSegment> findSubimage(BufferedImage imageIn, BufferedImage subImage, double similarity, boolean findAll, boolean treatTransparentAsObscured, int startX, int startY, int endX, int endY) {
+        return findSubimage(imageIn, CueKernel.fromImage(subImage), similarity, findAll, treatTransparentAsObscured, startX, startY, endX, endY);
     }
 
     /**
      * @param imageIn                    imageIn
-     * @param subImage                   subImage
+     * @param kernel                     the pre-compiled sub image
      * @param similarity                 similarity
      * @param findAll                    findAll
      * @param treatTransparentAsObscured this is a special flag that is used rarely. When true, it will consider all transparent pixels from the 'subImage' as pixels that must be lower than 200 accumulative value in the 'imageIn'. We use it for example when detecting "Loading" superimposed message (and background is obscured, with white(255,255,255) having a value of 64,64,64, which is the maximum value with obscured background.
@@ -34,14 +178,34 @@ class FindSubimage {
      * @return a list of found subimages
      */
     @SuppressWarnings("SameParameterValue")
-    static List<MarvinSegment> findSubimage(BufferedImage imageIn, BufferedImage subImage, double similarity, boolean findAll, boolean treatTransparentAsObscured, int startX, int startY, int endX, int endY) {
+    static List<MarvinSegment> findSubimage(BufferedImage imageIn, CueKernel kernel, double similarity, boolean findAll, boolean treatTransparentAsObscured, int startX, int startY, int endX, int endY) {
         List<MarvinSegment> segments = new ArrayList<>();
+        search(imageIn, null, kernel, new MatchProfile(MatchProfile.DEFAULT.tolerance, similarity, treatTransparentAsObscured), findAll, startX, startY, endX, endY, segments);
+        return segments;
+    }
+
+    /**
+     * Same as findSubimage on a BufferedImage, but the already decoded pixels of the frame are used.
+     */
+    @SuppressWarnings("SameParameterValue")
+    static List<MarvinSegment> findSubimage(Frame frame, CueKernel kernel, double similarity, boolean findAll, boolean treatTransparentAsObscured, int startX, int startY, int endX, int endY) {
+        List<MarvinSegment> segments = new ArrayList<>();
+        search(frame.image, frame, kernel, new MatchProfile(MatchProfile.DEFAULT.tolerance, similarity, treatTransparentAsObscured), findAll, startX, startY, endX, endY, segments);
+        return segments;
+    }
 
+    /**
+     * Search implementation: found segments are added to the segments list, that is also used to skip candidate
+     * positions overlapping previous matches when findAll is true.
+     *
+     * @param frame the decoded frame of imageIn, if null the search area is read from imageIn
+     */
+    private static void search(BufferedImage imageIn, Frame frame, CueKernel kernel, MatchProfile profile, boolean findAll, int startX, int startY, int endX, int endY, List<MarvinSegment> segments) {
         int imgInWidth = imageIn.getWidth();
         int imgInHeight = imageIn.getHeight();
 
-        int subImgWidth = subImage.getWidth();
-        int subImgHeight = subImage.getHeight();
+        int subImgWidth = kernel.width;
+        int subImgHeight = kernel.height;
 
         if (endX == 0) endX = imgInWidth; // endX was not set
         if (endY == 0) endY = imgInHeight; // endY was not set
@@ -51,90 +215,63 @@ class FindSubimage {
         if (endX > imgInWidth) endX = imgInWidth;
         if (endY > imgInHeight) endY = imgInHeight;
 
-        int subImagePixels = subImgWidth * subImgHeight;
-        boolean[][] processed = new boolean[imgInWidth][imgInHeight];
+        // A candidate position is discarded as soon as the mismatching pixels exceed this budget
+        double mismatchBudget = profile.mismatchBudget(kernel);
+        int tolerance = profile.tolerance;
+        boolean treatTransparentAsObscured = profile.treatTransparentAsObscured;
+
+        // Without a decoded frame, only the candidate positions plus the cue size are read from the image
+        int[] imageInRGB = frame != null ? frame.pixels : readRegion(imageIn, startX, startY, endX + subImgWidth, endY + subImgHeight);
+
+        // Kernel data, transparent pixels are only visited when they must be treated as obscured
+        int[] opaqueOffsets = kernel.opaqueOffsets(imgInWidth);
+        int[] transparentOffsets = treatTransparentAsObscured ? kernel.transparentOffsets(imgInWidth) : NO_OFFSETS;
 
-        int[] imageInRGB = imageIn.getRGB(0,0, imgInWidth, imgInHeight, null, 0, imgInWidth);
-        int[] subImageRGB = subImage.getRGB(0,0, subImgWidth, subImgHeight, null, 0, subImgWidth);
+        // Coarse-to-fine: on large searches, candidates are first tested on the downsampled cue and frame
+        CoarseKernel coarse = null;
+        CoarseKernel.FrameSums frameSums = null;
+        if (!treatTransparentAsObscured && (endX - startX) * (endY - startY) >= PYRAMID_MIN_AREA) {
+            coarse = kernel.getCoarse();
+
+            // each mismatching pixel can only make one block fail, so with a large budget the coarse test is useless
+            if (coarse != null && mismatchBudget >= coarse.blocks()) coarse = null;
+
+            // frames compute their sums once for all the searches, other images only for the search area
+            if (coarse != null) {
+                frameSums = frame != null ? frame.frameSums(coarse) : coarse.frameSums(imageInRGB, imgInWidth, startX, startY,
+                        Math.min(imgInWidth, endX + subImgWidth), Math.min(imgInHeight, endY + subImgHeight));
+            }
+        }
 
         // Full image
         try {
-            mainLoop:
-            for (int y = startY; y < endY; y++) {
-                for (int x = startX; x < endX; x++) {
+            int bands = bandPool == null ? 1 : Math.min(bandPool.getParallelism(), (endY - startY) / MIN_BAND_ROWS);
 
-                    if (processed[x][y]) {
-                        continue;
-                    }
+            if (bands > 1 && (endX - startX) * (endY - startY) >= PARALLEL_MIN_AREA) {
+                segments.addAll(findInBands(bands, imageInRGB, imgInWidth, imgInHeight, kernel, coarse, frameSums, opaqueOffsets, transparentOffsets, tolerance, mismatchBudget, findAll, treatTransparentAsObscured, startX, startY, endX, endY));
+            } else {
+                mainLoop:
+                for (int y = startY; y < endY; y++) {
+                    for (int x = startX; x < endX; x++) {
 
-                    int notMatched = 0;
-                    boolean match = true;
-                    // subImage
-                    if (y + subImgHeight < imgInHeight && x + subImgWidth < imgInWidth) {
-
-                        outerLoop:
-                        for (int i = 0; i < subImgHeight; i++) {
-                            for (int j = 0; j < subImgWidth; j++) {
-
-                                if (processed[x + j][y + i]) {
-                                    match = false;
-                                    break outerLoop;
-                                }
-
-                                int imageInIndex = ((y + i)*imgInWidth)+(x + j);
-                                // int c1Alpha = (imageInRGB[imageInIndex] >> 24) & 0xff;
-                                int c1Red = (imageInRGB[imageInIndex] >> 16) & 0xff;
-                                int c1Green = (imageInRGB[imageInIndex] >> 8) & 0xff;
-                                int c1Blue = (imageInRGB[imageInIndex]) & 0xff;
-
-                                int subImageIndex = (i*subImgWidth)+j;
-                                int c2Alpha = (subImageRGB[subImageIndex] >> 24) & 0xff;
-                                int c2Red = (subImageRGB[subImageIndex] >> 16) & 0xff;
-                                int c2Green = (subImageRGB[subImageIndex] >> 8) & 0xff;
-                                int c2Blue = (subImageRGB[subImageIndex]) & 0xff;
-
-                                if (c2Alpha == 0) {
-                                    if (!treatTransparentAsObscured)
-                                        continue; // we don't match transparent pixels!
-                                    // treat transparent pixel as obscured background:
-                                    int total = c1Red + c1Green + c1Blue;
-                                    if (total > 200) {
-                                        notMatched++;
-
-                                        if (notMatched > (1 - similarity) * subImagePixels) {
-                                            match = false;
-                                            break outerLoop;
-                                        }
-                                    }
-                                } else if
-                                (
-                                        Math.abs(c1Red - c2Red) > 5 ||
-                                                Math.abs(c1Green - c2Green) > 5 ||
-                                                Math.abs(c1Blue - c2Blue) > 5
-                                ) {
-                                    notMatched++;
-
-                                    if (notMatched > (1 - similarity) * subImagePixels) {
-                                        match = false;
-                                        break outerLoop;
-                                    }
-                                }
-                            }
+                        // subImage
+                        if (y + subImgHeight >= imgInHeight || x + subImgWidth >= imgInWidth) {
+                            continue;
                         }
-                    } else {
-                        match = false;
-                    }
 
-                    if (match) {
-                        segments.add(new MarvinSegment(x, y, x + subImgWidth, y + subImgHeight));
+                        if (findAll && isProcessed(segments, x, y, subImgWidth, subImgHeight)) {
+                            continue;
+                        }
 
-                        if (!findAll) {
-                            break mainLoop;
+                        if (coarse != null && !coarse.mayMatch(frameSums, x, y, tolerance, mismatchBudget)) {
+                            continue;
                         }
 
-                        for (int i = 0; i < subImgHeight; i++) {
-                            for (int j = 0; j < subImgWidth; j++) {
-                                processed[x + j][y + i] = true;
+                        if (matchesAt(imageInRGB, imgInWidth, (y * imgInWidth) + x, kernel, opaqueOffsets, transparentOffsets, tolerance, mismatchBudget, treatTransparentAsObscured)) {
+                            segments.add(new MarvinSegment(x, y, x + subImgWidth, y + subImgHeight));
+
+                            if (!findAll) {
+                                break mainLoop;
                             }
                         }
                     }
@@ -143,14 +280,149 @@ class FindSubimage {
         } catch (java.lang.ArrayIndexOutOfBoundsException e) {
             BHBotUnity.logger.debug("ArrayIndexOutOfBounds Exception in FindSubimage", e);
             Misc.saveScreen("ArrayIndexOutOfBounds-In", "find-errors", BHBotUnity.includeMachineNameInScreenshots, imageIn);
-            Misc.saveScreen("ArrayIndexOutOfBounds-Sub", "find-errors", BHBotUnity.includeMachineNameInScreenshots, subImage);
+            Misc.saveScreen("ArrayIndexOutOfBounds-Sub", "find-errors", BHBotUnity.includeMachineNameInScreenshots, kernel.image);
             BHBotUnity.logger.debug(String.format("Image In  -> W: %d H: %d", imgInWidth, imgInHeight));
             BHBotUnity.logger.debug(String.format("Image Sub -> W: %d H: %d", subImgWidth, subImgHeight));
             BHBotUnity.logger.debug(String.format("startX: %d, startY: %d, endX: %d, endY: %d", startX, startY, endX, endY));
             BHBotUnity.logger.debug(Misc.getStackTrace());
         }
+    }
+
+    /**
+     * The search area is split in horizontal bands of candidate rows, each one searched in a dedicated task. Results
+     * are the same of the sequential search:
+     * - when looking for the first occurrence, the match of the lowest band wins and higher bands are cancelled as soon
+     * as a lower band finds the cue;
+     * - when looking for all the occurrences, bands report every matching position and overlapping segments are
+     * discarded following the row-major order, as the sequential search does.
+     */
+    private static List<MarvinSegment> findInBands(int bands, int[] imageInRGB, int imgInWidth, int imgInHeight, CueKernel kernel, CoarseKernel coarse, CoarseKernel.FrameSums frameSums, int[] opaqueOffsets, int[] transparentOffsets,
+                                                   int tolerance, double mismatchBudget, boolean findAll, boolean treatTransparentAsObscured, int startX, int startY, int endX, int endY) {
+        int bandHeight = (endY - startY + bands - 1) / bands;
+        AtomicInteger firstFoundBand = new AtomicInteger(Integer.MAX_VALUE);
+
+        List<ForkJoinTask<List<MarvinSegment>>> tasks = new ArrayList<>(bands);
+        for (int band = 0; band < bands; band++) {
+            final int bandIdx = band;
+            final int bandStartY = startY + (band * bandHeight);
+            final int bandEndY = Math.min(endY, bandStartY + bandHeight);
+
+            tasks.add(bandPool.submit(() -> {
+                List<MarvinSegment> found = new ArrayList<>();
+
+                for (int y = bandStartY; y < bandEndY; y++) {
+                    // a lower band already found the cue
+                    if (!findAll && firstFoundBand.get() < bandIdx) return found;
+
+                    for (int x = startX; x < endX; x++) {
+                        if (y + kernel.height >= imgInHeight || x + kernel.width >= imgInWidth) {
+                            continue;
+                        }
+
+                        if (coarse != null && !coarse.mayMatch(frameSums, x, y, tolerance, mismatchBudget)) {
+                            continue;
+                        }
+
+                        if (matchesAt(imageInRGB, imgInWidth, (y * imgInWidth) + x, kernel, opaqueOffsets, transparentOffsets, tolerance, mismatchBudget, treatTransparentAsObscured)) {
+                            found.add(new MarvinSegment(x, y, x + kernel.width, y + kernel.height));
+
+                            if (!findAll) {
+                                firstFoundBand.accumulateAndGet(bandIdx, Math::min);
+                                return found;
+                            }
+                        }
+                    }
+                }
+
+                return found;
+            }));
+        }
+
+        List<MarvinSegment> segments = new ArrayList<>();
+        for (ForkJoinTask<List<MarvinSegment>> task : tasks) {
+            List<MarvinSegment> found = task.join();
+
+            if (!findAll) {
+                if (!found.isEmpty()) {
+                    segments.add(found.get(0));
+                    break;
+                }
+                continue;
+            }
+
+            for (MarvinSegment seg : found) {
+                if (!isProcessed(segments, seg.x1, seg.y1, kernel.width, kernel.height)) segments.add(seg);
+            }
+        }
 
         return segments;
     }
 
+    /**
+     * Tests a single candidate position using the configured matching backend.
+     *
+     * @param imageInRGB pixels of the image we are searching in
+     * @param stride     width of the image we are searching in
+     * @param base       index in imageInRGB of the candidate top-left corner
+     * @return true if the kernel matches in the candidate position
+     */
+    static boolean matchesAt(int[] imageInRGB, int stride, int base, CueKernel kernel, int[] opaqueOffsets, int[] transparentOffsets, int tolerance, double mismatchBudget, boolean treatTransparentAsObscured) {
+        Matcher matcher = vectorMatcher;
+        return matcher != null
+                ? matcher.matches(imageInRGB, stride, base, kernel, opaqueOffsets, tolerance, mismatchBudget, treatTransparentAsObscured)
+                : scalarMatch(imageInRGB, base, kernel, opaqueOffsets, transparentOffsets, tolerance, mismatchBudget);
+    }
+
+    /**
+     * Scalar matcher: compares the kernel pixels with the image, stopping as soon as the mismatch budget is exceeded.
+     */
+    private static boolean scalarMatch(int[] imageInRGB, int base, CueKernel kernel, int[] opaqueOffsets, int[] transparentOffsets, int tolerance, double mismatchBudget) {
+        int[] subRed = kernel.red;
+        int[] subGreen = kernel.green;
+        int[] subBlue = kernel.blue;
+
+        int notMatched = 0;
+
+        // kernel anchors come first, so most wrong candidates are rejected within the first few pixels
+        for (int k = 0; k < opaqueOffsets.length; k++) {
+            int c1 = imageInRGB[base + opaqueOffsets[k]];
+
+            if (
+                    Math.abs(((c1 >> 16) & 0xff) - subRed[k]) > tolerance ||
+                            Math.abs(((c1 >> 8) & 0xff) - subGreen[k]) > tolerance ||
+                            Math.abs((c1 & 0xff) - subBlue[k]) > tolerance
+            ) {
+                notMatched++;
+
+                if (notMatched > mismatchBudget) return false;
+            }
+        }
+
+        // treat transparent pixel as obscured background:
+        for (int transparentOffset : transparentOffsets) {
+            int c1 = imageInRGB[base + transparentOffset];
+            int total = ((c1 >> 16) & 0xff) + ((c1 >> 8) & 0xff) + (c1 & 0xff);
+
+            if (total > 200) {
+                notMatched++;
+
+                if (notMatched > mismatchBudget) return false;
+            }
+        }
+
+        return true;
+    }
+
+    /**
+     * When searching for all the occurrences, a candidate position is skipped if any of its pixels is part of a
+     * previously found segment.
+     */
+    static boolean isProcessed(List<MarvinSegment> segments, int x, int y, int width, int height) {
+        for (int i = 0; i < segments.size(); i++) {
+            MarvinSegment seg = segments.get(i);
+            if (seg.x1 < x + width && x < seg.x2 && seg.y1 < y + height && y < seg.y2) return true;
+        }
+        return false;
+    }
+
 }
\ No newline at end of file
@@ -0,0 +1,268 @@
+package com.github.ilpersi.BHBot;
+
+import java.awt.image.*;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A snapshot of the game screen. The pixels of the captured image are decoded only once, when the frame is created,
+ * and all the detection code (cue matching, bar reading, familiar type, position checks) indexes directly into the
+ * same array instead of copying the image again.
+ * <p>
+ * Frames usually keep their own copy of the pixels. Frames captured by the FrameBus adopt the pooled image of the
+ * capture instead, and its raster goes back to the pool once the frame is recycled (see FrameBus.recycle): after that
+ * the pixels of the frame must not be read anymore.
+ * <p>
+ * Frames are immutable and can be safely shared between the bot threads. The only mutable parts are the memo of the cue
+ * detections performed on the frame (see DetectionMemo), that is thread safe, the link to the previous frame and the
+ * usage state managed by the FrameBus.
+ * <p>
+ * To understand which parts of the screen changed between two captures, the frame is divided in tiles of TILE_SIZE
+ * pixels and a hash of each tile is computed the first time it is needed.
+ */
+class Frame {
+
+    static final int TILE_SIZE = 16;
+
+    private static final AtomicLong lastId = new AtomicLong();
+
+    private static final DirectColorModel RGB_MODEL = new DirectColorModel(24, 0xFF0000, 0x00FF00, 0x0000FF);
+
+    // Progressive number of the frame, used to understand if two detections were performed on the same capture
+    final long id;
+    // The pixels are not older than this time, in milliseconds: when the capture was started or, for frames pushed by the
+    // browser, when they were painted. Inputs sent after this time may not be visible in the frame
+    final long timestamp;
+
+    // The pixels as a BufferedImage, used by the code that still needs one (e.g. to save screenshots). The image shares
+    // the pixels array, so it must not be modified
+    final BufferedImage image;
+    final int width;
+    final int height;
+
+    // Pixels of the frame in row-major order using the default RGB color model, as returned by BufferedImage.getRGB
+    final int[] pixels;
+
+    // Results of the cue detections performed on this frame, managed by DetectionMemo
+    final Map<String, MarvinSegment> detections = new ConcurrentHashMap<>();
+
+    // Block sums of the whole frame used by coarse-to-fine searches, by downsampling factor
+    private final Map<Integer, CoarseKernel.FrameSums> frameSums = new ConcurrentHashMap<>();
+
+    // The capture taken before this one, only the last link is kept so that old frames can be garbage collected
+    private volatile Frame previous;
+    private volatile long[] tileHashes;
+
+    // True if image is a pooled image adopted by the frame, that must go back to the pool once the frame is recycled
+    final boolean adopted;
+    // Guarded by the lock of the FrameBus: threads using the frame, if the image was handed out to code that may keep
+    // it and if the image already went back to the pool
+    int users;
+    boolean escaped;
+    boolean recycled;
+
+    Frame(BufferedImage image) {
+        this(image, Misc.getTime());
+    }
+
+    Frame(BufferedImage image, long timestamp) {
+        this(image, timestamp, false);
+    }
+
+    /**
+     * @param adopt if true and the image is a plain TYPE_INT_RGB image, its raster is used by the frame without copying it
+     */
+    private Frame(BufferedImage image, long timestamp, boolean adopt) {
+        this.id = lastId.incrementAndGet();
+        this.timestamp = timestamp;
+        this.width = image.getWidth();
+        this.height = image.getHeight();
+
+        int[] data = adopt ? wholeRasterData(image) : null;
+        if (data != null) {
+            // RGB images have no alpha, getRGB reports them as opaque
+            for (int i = 0; i < data.length; i++) data[i] |= 0xFF000000;
+
+            this.adopted = true;
+            this.pixels = data;
+            this.image = image;
+        } else {
+            this.adopted = false;
+            this.pixels = readPixels(image);
+
+            WritableRaster raster = Raster.createPackedRaster(new DataBufferInt(pixels, pixels.length), width, height, width, RGB_MODEL.getMasks(), null);
+            this.image = new BufferedImage(RGB_MODEL, raster, false, null);
+        }
+    }
+
+    /**
+     * @return the pixels of a TYPE_INT_RGB image whose raster is exactly width * height, as the ones of ImagePool, or
+     * null for any other image
+     */
+    private static int[] wholeRasterData(BufferedImage image) {
+        WritableRaster raster = image.getRaster();
+        if (image.getType() != BufferedImage.TYPE_INT_RGB || raster.getParent() != null) return null;
+
+        if (raster.getDataBuffer() instanceof DataBufferInt dataBuffer && dataBuffer.getNumBanks() == 1 && dataBuffer.getOffset() == 0
+                && raster.getSampleModel() instanceof SinglePixelPackedSampleModel sampleModel
+                && sampleModel.getScanlineStride() == image.getWidth()
+                && dataBuffer.getData().length == image.getWidth() * image.getHeight()) {
+            return dataBuffer.getData();
+        }
+
+        return null;
+    }
+
+    /**
+     * Reads the pixels of the image as getRGB does. Images backed by an int array are copied row by row from the raster,
+     * without converting each pixel through the color model.
+     */
+    private static int[] readPixels(BufferedImage image) {
+        int w = image.getWidth(), h = image.getHeight();
+        int type = image.getType();
+        WritableRaster raster = image.getRaster();
+
+        if ((type == BufferedImage.TYPE_INT_ARGB || type == BufferedImage.TYPE_INT_RGB)
+                && raster.getDataBuffer() instanceof DataBufferInt dataBuffer
+                && raster.getSampleModel() instanceof SinglePixelPackedSampleModel sampleModel) {
+            int[] data = dataBuffer.getData();
+            int stride = sampleModel.getScanlineStride();
+            int offset = dataBuffer.getOffset() + sampleModel.getOffset(-raster.getSampleModelTranslateX(), -raster.getSampleModelTranslateY());
+
+            int[] pixels = new int[w * h];
+            for (int y = 0; y < h; y++) {
+                System.arraycopy(data, offset + (y * stride), pixels, y * w, w);
+            }
+
+            // RGB images have no alpha, getRGB reports them as opaque
+            if (type == BufferedImage.TYPE_INT_RGB) {
+                for (int i = 0; i < pixels.length; i++) pixels[i] |= 0xFF000000;
+            }
+            return pixels;
+        }
+
+        return image.getRGB(0, 0, w, h, null, 0, w);
+    }
+
+    /**
+     * @param image     the captured image, it is copied
+     * @param timestamp the pixels are not older than this time, in milliseconds
+     * @param previous  the frame captured before this one, may be null
+     */
+    Frame(BufferedImage image, long timestamp, Frame previous) {
+        this(image, timestamp, previous, false);
+    }
+
+    /**
+     * Creates a frame that uses the pixels of a pooled image when possible (see adopted). An image that is not adopted
+     * is copied, and the caller still owns it.
+     *
+     * @param image     the captured image
+     * @param timestamp the pixels are not older than this time, in milliseconds
+     * @param previous  the frame captured before this one, may be null
+     */
+    static Frame adopt(BufferedImage image, long timestamp, Frame previous) {
+        return new Frame(image, timestamp, previous, true);
+    }
+
+    private Frame(BufferedImage image, long timestamp, Frame previous, boolean adopt) {
+        this(image, timestamp, adopt);
+
+        if (previous != null) {
+            previous.previous = null;
+            this.previous = previous;
+        }
+    }
+
+    /**
+     * @return the frame captured before this one, or null if it is not available
+     */
+    Frame getPrevious() {
+        return previous;
+    }
+
+    /**
+     * Checks if a region of the screen is unchanged compared to another frame. The check is performed on whole tiles,
+     * so the result is false also when pixels close to the region have changed.
+     *
+     * @param other the frame to compare with
+     * @param x1    left side of the region
+     * @param y1    top side of the region
+     * @param x2    right side of the region (excluded)
+     * @param y2    bottom side of the region (excluded)
+     * @return true if all the tiles covering the region have the same hash in both frames
+     */
+    boolean isUnchanged(Frame other, int x1, int y1, int x2, int y2) {
+        if (other.width != width || other.height != height) return false;
+
+        x1 = Math.max(0, x1);
+        y1 = Math.max(0, y1);
+        x2 = Math.min(width, x2);
+        y2 = Math.min(height, y2);
+        if (x2 <= x1 || y2 <= y1) return true;
+
+        long[] hashes = tileHashes();
+        long[] otherHashes = other.tileHashes();
+        int tilesX = tilesX();
+
+        for (int tileY = y1 / TILE_SIZE; tileY <= (y2 - 1) / TILE_SIZE; tileY++) {
+            for (int tileX = x1 / TILE_SIZE; tileX <= (x2 - 1) / TILE_SIZE; tileX++) {
+                if (hashes[(tileY * tilesX) + tileX] != otherHashes[(tileY * tilesX) + tileX]) return false;
+            }
+        }
+
+        return true;
+    }
+
+    private int tilesX() {
+        return (width + TILE_SIZE - 1) / TILE_SIZE;
+    }
+
+    /**
+     * The hashes are computed holding the lock of the frame, so that the FrameBus can compute them before the pixels go
+     * back to the pool while another thread may be reading them.
+     */
+    synchronized long[] tileHashes() {
+        long[] hashes = tileHashes;
+        if (hashes != null) return hashes;
+
+        // FNV-1a on the pixel values, computed row by row on all the tiles
+        int tilesX = tilesX();
+        int tilesY = (height + TILE_SIZE - 1) / TILE_SIZE;
+        hashes = new long[tilesX * tilesY];
+        Arrays.fill(hashes, 0xcbf29ce484222325L);
+
+        for (int y = 0; y < height; y++) {
+            int tile = (y / TILE_SIZE) * tilesX;
+            for (int tileX1 = 0; tileX1 < width; tileX1 += TILE_SIZE, tile++) {
+                long hash = hashes[tile];
+                for (int i = (y * width) + tileX1, end = i + Math.min(TILE_SIZE, width - tileX1); i < end; i++) {
+                    hash = (hash ^ pixels[i]) * 0x100000001b3L;
+                }
+                hashes[tile] = hash;
+            }
+        }
+
+        tileHashes = hashes;
+        return hashes;
+    }
+
+    /**
+     * @param coarse the coarse kernel that needs the sums
+     * @return the block sums of the whole frame for the factor of the kernel, computed the first time they are needed
+     */
+    CoarseKernel.FrameSums frameSums(CoarseKernel coarse) {
+        return frameSums.computeIfAbsent(coarse.factor, factor -> coarse.frameSums(pixels, width, 0, 0, width, height));
+    }
+
+    /**
+     * @param x x coordinate of the pixel
+     * @param y y coordinate of the pixel
+     * @return the pixel value using the default RGB color model
+     */
+    int getRGB(int x, int y) {
+        return pixels[(y * width) + x];
+    }
+}
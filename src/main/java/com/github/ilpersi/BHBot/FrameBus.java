@@ -0,0 +1,227 @@
+package com.github.ilpersi.BHBot;
+
+import java.awt.image.BufferedImage;
+import java.util.function.Supplier;
+
+/**
+ * Shares the game frames between the bot threads, so that AdventureThread and BlockerThread don't take a screenshot
+ * each when they need to read the screen at the same time.
+ * <p>
+ * Only one thread at a time captures a new frame: a thread asking for a frame while a capture is in progress waits for
+ * it and uses the same frame, unless the capture was started before a click. Frames are immutable and are identified
+ * by their progressive id, that is used as sequence number by the threads waiting for the next one.
+ * <p>
+ * Captured frames adopt the pooled image of the screenshot, so at steady state captures don't allocate new rasters.
+ * The bus keeps track of the frame each thread is using and the image of a frame goes back to the pool once the frame
+ * is superseded: when it is not one of the last two captures, no thread is using it and its image was never handed out
+ * (see escape).
+ */
+class FrameBus {
+
+    /**
+     * An image taken by the screenshot supplier of capture.
+     *
+     * @param image     the captured image, the frame adopts it or it is released to the pool once the frame is created
+     * @param timestamp the pixels are not older than this time, in milliseconds (e.g. the paint time of a screencast frame)
+     */
+    record Screenshot(BufferedImage image, long timestamp) {
+    }
+
+    private final Object lock = new Object();
+    private final ImagePool imagePool;
+
+    // The frame used by each thread, it is changed only holding lock
+    private final ThreadLocal<Frame> threadFrame = new ThreadLocal<>();
+
+    // All the fields are guarded by lock
+    private Frame latest;
+    private boolean capturing;
+    // When the capture in progress was started, in milliseconds
+    private long captureStart;
+    // Number of captures started so far, and the one that produced latest
+    private long captureCnt;
+    private long latestCapture;
+
+    FrameBus(ImagePool imagePool) {
+        this.imagePool = imagePool;
+    }
+
+    /**
+     * Returns a new frame, taking a new screenshot only if no other thread is already doing it. The frame becomes the one
+     * used by the calling thread.
+     *
+     * @param notBefore  a capture in progress is only shared if it was started at this time or later, in milliseconds
+     * @param screenshot takes the screenshot of the game
+     * @return the new frame
+     */
+    Frame capture(long notBefore, Supplier<Screenshot> screenshot) {
+        long capture;
+
+        synchronized (lock) {
+            if (capturing && captureStart >= notBefore) {
+                long shared = captureCnt;
+                waitWhileCapturing(shared);
+                if (latestCapture == shared) {
+                    use(latest);
+                    return latest;
+                }
+            }
+
+            // a capture started too early is not useful, but only one screenshot is taken at a time
+            while (capturing) waitWhileCapturing(captureCnt);
+
+            capturing = true;
+            captureStart = Misc.getTime();
+            capture = ++captureCnt;
+        }
+
+        Frame frame = null;
+        try {
+            Screenshot shot = screenshot.get();
+            synchronized (lock) {
+                // a click sent while the screenshot was in flight may not be visible, so the frame is as old as the
+                // capture start, or older if the supplier says so
+                Frame dropped = latest != null ? latest.getPrevious() : null;
+                frame = Frame.adopt(shot.image(), Math.min(captureStart, shot.timestamp()), latest);
+                latest = frame;
+                latestCapture = capture;
+                use(frame);
+                if (dropped != null) recycle(dropped);
+            }
+            if (!frame.adopted) imagePool.release(shot.image());
+        } finally {
+            synchronized (lock) {
+                capturing = false;
+                lock.notifyAll();
+            }
+        }
+
+        return frame;
+    }
+
+    /**
+     * Waits for the end of a capture, must be called holding lock. The capture always ends, so interruptions are
+     * restored once it is done.
+     */
+    private void waitWhileCapturing(long capture) {
+        boolean interrupted = false;
+        while (capturing && captureCnt == capture) {
+            try {
+                lock.wait();
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        if (interrupted) Thread.currentThread().interrupt();
+    }
+
+    /**
+     * Waits for a frame newer than the one the caller already processed, without capturing it. The frame becomes the
+     * one used by the calling thread.
+     *
+     * @param lastId  id of the last frame processed by the caller
+     * @param timeout maximum time to wait in milliseconds, frames older than this are not returned
+     * @return a frame newer than lastId or null if no recent frame was published in time
+     */
+    Frame awaitNext(long lastId, long timeout) {
+        long deadline = Misc.getTime() + timeout;
+
+        synchronized (lock) {
+            while (true) {
+                long now = Misc.getTime();
+                if (latest != null && latest.id > lastId && (now - latest.timestamp) <= timeout) {
+                    use(latest);
+                    return latest;
+                }
+                if (now >= deadline) return null;
+
+                try {
+                    lock.wait(deadline - now);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return null;
+                }
+            }
+        }
+    }
+
+    /**
+     * Publishes a frame that was not captured from the browser, e.g. loaded from a file. The image is copied and the
+     * frame becomes the one used by the calling thread.
+     */
+    Frame publish(BufferedImage image) {
+        synchronized (lock) {
+            Frame dropped = latest != null ? latest.getPrevious() : null;
+            latest = new Frame(image, Misc.getTime(), latest);
+            latestCapture = 0;
+            use(latest);
+            if (dropped != null) recycle(dropped);
+            lock.notifyAll();
+            return latest;
+        }
+    }
+
+    /**
+     * @return the frame used by the calling thread or null if it did not use any frame yet
+     */
+    Frame current() {
+        return threadFrame.get();
+    }
+
+    /**
+     * Makes the last published frame the one used by the calling thread.
+     *
+     * @return the last published frame or null if no frame was captured yet
+     */
+    Frame useLatest() {
+        synchronized (lock) {
+            if (latest != null) use(latest);
+            return latest;
+        }
+    }
+
+    /**
+     * Makes a frame the one used by the calling thread, e.g. a frame that is not shared through the bus.
+     *
+     * @param frame the frame, may be null
+     * @return the frame
+     */
+    Frame use(Frame frame) {
+        synchronized (lock) {
+            Frame old = threadFrame.get();
+            if (old == frame) return frame;
+
+            if (frame != null) frame.users++;
+            threadFrame.set(frame);
+            if (old != null) {
+                old.users--;
+                recycle(old);
+            }
+            return frame;
+        }
+    }
+
+    /**
+     * Marks the image of a frame as handed out to code that may keep it (e.g. to save it later), so that it never goes
+     * back to the pool.
+     */
+    void escape(Frame frame) {
+        synchronized (lock) {
+            frame.escaped = true;
+        }
+    }
+
+    /**
+     * Gives the image of a superseded frame back to the pool, must be called holding lock. The last two captures are
+     * kept, as new frames are compared with their previous one (see DetectionMemo). The tile hashes are computed first,
+     * so that frames still referencing this one can be compared with it.
+     */
+    private void recycle(Frame frame) {
+        if (!frame.adopted || frame.recycled || frame.escaped || frame.users > 0) return;
+        if (frame == latest || (latest != null && frame == latest.getPrevious())) return;
+
+        frame.tileHashes();
+        frame.recycled = true;
+        imagePool.release(frame.image);
+    }
+}
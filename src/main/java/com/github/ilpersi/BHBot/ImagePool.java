@@ -0,0 +1,205 @@
+package com.github.ilpersi.BHBot;
+
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReadParam;
+import javax.imageio.ImageReader;
+import javax.imageio.ImageTypeSpecifier;
+import javax.imageio.stream.ImageInputStreamImpl;
+import java.awt.color.ColorSpace;
+import java.awt.image.*;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * A small pool of TYPE_INT_RGB (and TYPE_INT_ARGB) images used by the capture pipeline. PNG screenshots are decoded
+ * straight into a pooled image and the game area is copied in another pooled image, that the Frame adopts and gives
+ * back once it is superseded (see FrameBus): at steady state captures reuse the same few rasters instead of allocating
+ * new images for each screenshot.
+ * <p>
+ * Images returned by acquire, decode, copy and blank are owned by the caller. Only the owner can release an image and
+ * it must not use it anymore after that, as it will be overwritten by the next captures.
+ */
+class ImagePool {
+
+    // Maximum number of free images kept in the pool
+    private static final int MAX_FREE = 4;
+
+    // Guarded by this
+    private final List<BufferedImage> free = new ArrayList<>(MAX_FREE);
+
+    // The reader and its parameters are reused between decodes, they are guarded by pngReader
+    private final ImageReader pngReader;
+    private final ImageReadParam pngParam;
+
+    ImagePool() {
+        Iterator<ImageReader> readers = ImageIO.getImageReadersByFormatName("png");
+        pngReader = readers.hasNext() ? readers.next() : null;
+        pngParam = pngReader != null ? pngReader.getDefaultReadParam() : null;
+    }
+
+    /**
+     * @return an image of the requested size, its content is undefined
+     */
+    BufferedImage acquire(int width, int height) {
+        return acquire(width, height, BufferedImage.TYPE_INT_RGB);
+    }
+
+    private synchronized BufferedImage acquire(int width, int height, int type) {
+        for (int i = free.size() - 1; i >= 0; i--) {
+            BufferedImage image = free.get(i);
+            if (image.getWidth() == width && image.getHeight() == height && image.getType() == type) return free.remove(i);
+        }
+
+        return new BufferedImage(width, height, type);
+    }
+
+    /**
+     * Gives an image back to the pool. Images that can't be reused (other types, sub images) are ignored.
+     */
+    synchronized void release(BufferedImage image) {
+        if (image == null || image.getRaster().getParent() != null) return;
+        if (image.getType() != BufferedImage.TYPE_INT_RGB && image.getType() != BufferedImage.TYPE_INT_ARGB) return;
+        if (free.contains(image)) return;
+
+        // images of older sizes (e.g. before a resize) are the first ones to go
+        if (free.size() == MAX_FREE) free.remove(0);
+        free.add(image);
+    }
+
+    /**
+     * @return a black image of the requested size, used when the screen can't be captured
+     */
+    BufferedImage blank(int width, int height) {
+        BufferedImage image = acquire(width, height);
+        Arrays.fill(((DataBufferInt) image.getRaster().getDataBuffer()).getData(), 0);
+        return image;
+    }
+
+    /**
+     * Copies a region of an image in a pooled image.
+     *
+     * @throws RasterFormatException if the region is outside the source image
+     */
+    BufferedImage copy(BufferedImage src, int x, int y, int width, int height) {
+        if (x < 0 || y < 0 || x + width > src.getWidth() || y + height > src.getHeight())
+            throw new RasterFormatException("Region " + x + "," + y + " " + width + "x" + height + " is outside of the image");
+
+        BufferedImage image = acquire(width, height);
+        int[] dst = ((DataBufferInt) image.getRaster().getDataBuffer()).getData();
+
+        WritableRaster raster = src.getRaster();
+        int type = src.getType();
+        if ((type == BufferedImage.TYPE_INT_RGB || type == BufferedImage.TYPE_INT_ARGB)
+                && raster.getDataBuffer() instanceof DataBufferInt dataBuffer
+                && raster.getSampleModel() instanceof SinglePixelPackedSampleModel sampleModel) {
+            // rows are copied as they are, the alpha of ARGB images is ignored by the RGB destination
+            int[] data = dataBuffer.getData();
+            int stride = sampleModel.getScanlineStride();
+            int offset = dataBuffer.getOffset() + sampleModel.getOffset(x - raster.getSampleModelTranslateX(), y - raster.getSampleModelTranslateY());
+            for (int row = 0; row < height; row++) {
+                System.arraycopy(data, offset + (row * stride), dst, row * width, width);
+            }
+        } else {
+            src.getRGB(x, y, width, height, dst, 0, width);
+        }
+
+        return image;
+    }
+
+    /**
+     * Decodes a PNG image. 8 bit RGB and RGBA images, as produced by the browsers, are decoded directly into a pooled
+     * TYPE_INT_RGB or TYPE_INT_ARGB image; other formats are decoded by ImageIO in a new image.
+     *
+     * @param png the PNG data
+     * @return the decoded image
+     * @throws IOException if the data can't be decoded
+     */
+    BufferedImage decode(byte[] png) throws IOException {
+        if (pngReader != null) {
+            synchronized (pngReader) {
+                try (ByteArrayImageInputStream in = new ByteArrayImageInputStream(png)) {
+                    pngReader.setInput(in, true, true);
+
+                    ImageTypeSpecifier rawType = pngReader.getRawImageType(0);
+                    if (isRGB8(rawType)) {
+                        // the PNG reader can't drop the alpha band, so it is decoded too
+                        int type = rawType.getNumBands() == 4 ? BufferedImage.TYPE_INT_ARGB : BufferedImage.TYPE_INT_RGB;
+                        BufferedImage image = acquire(pngReader.getWidth(0), pngReader.getHeight(0), type);
+                        pngParam.setDestination(image);
+                        try {
+                            pngReader.read(0, pngParam);
+                        } catch (IOException | RuntimeException e) {
+                            release(image);
+                            throw e;
+                        } finally {
+                            pngParam.setDestination(null);
+                        }
+                        return image;
+                    }
+                } finally {
+                    pngReader.setInput(null);
+                }
+            }
+        }
+
+        BufferedImage image = ImageIO.read(new ByteArrayInputStream(png));
+        if (image == null) throw new IOException("The image format is not supported.");
+        return image;
+    }
+
+    /**
+     * @return true if the PNG samples are 8 bit RGB, with an optional alpha channel
+     */
+    private static boolean isRGB8(ImageTypeSpecifier rawType) {
+        if (rawType == null) return false;
+
+        ColorModel colorModel = rawType.getColorModel();
+        if (!(colorModel instanceof ComponentColorModel) || colorModel.getColorSpace().getType() != ColorSpace.TYPE_RGB)
+            return false;
+
+        int bands = rawType.getNumBands();
+        if (bands != 3 && bands != 4) return false;
+
+        for (int band = 0; band < bands; band++) {
+            if (rawType.getBitsPerBand(band) != 8) return false;
+        }
+        return true;
+    }
+
+    /**
+     * Reads the PNG data from the array, without the cache of the standard streams.
+     */
+    private static class ByteArrayImageInputStream extends ImageInputStreamImpl {
+        private final byte[] data;
+
+        ByteArrayImageInputStream(byte[] data) {
+            this.data = data;
+        }
+
+        @Override
+        public int read() {
+            bitOffset = 0;
+            return streamPos < data.length ? data[(int) streamPos++] & 0xff : -1;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) {
+            bitOffset = 0;
+            if (streamPos >= data.length) return -1;
+
+            int cnt = (int) Math.min(len, data.length - streamPos);
+            System.arraycopy(data, (int) streamPos, b, off, cnt);
+            streamPos += cnt;
+            return cnt;
+        }
+
+        @Override
+        public long length() {
+            return data.length;
+        }
+    }
+}
@@ -0,0 +1,151 @@
+package com.github.ilpersi.BHBot;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.JsonParseException;
+import com.google.gson.reflect.TypeToken;
+import com.google.gson.stream.JsonReader;
+
+import java.io.*;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Many cues are registered without bounds and are searched on the whole screen. When learning is enabled, the
+ * positions where each of these cues is found are recorded in a box that is saved in a JSON file and used to restrict
+ * the following searches, also on later runs.
+ * <p>
+ * When a cue is not found inside its learned box, the whole screen is searched and, if the cue is found somewhere
+ * else, the box is widened to include the new position. Widened boxes are saved with a delay, outside the detection
+ * path, so that several changes are written at once.
+ */
+class LearnedBounds {
+
+    private static final String JSON_FILE_PATH = "./data/learned_bounds.json";
+
+    // Pixels added around each learned position, so that small shifts do not require a full search
+    private static final int MARGIN = 2;
+
+    // How long after a change the JSON file is written, in milliseconds
+    private static final int SAVE_DELAY = 30 * Misc.Durations.SECOND;
+
+    /**
+     * Box containing the top-left corners of all the matches of a cue, x2 and y2 are excluded
+     */
+    private static class Box {
+        private final int x1, y1, x2, y2;
+
+        Box(int x1, int y1, int x2, int y2) {
+            this.x1 = x1;
+            this.y1 = y1;
+            this.x2 = x2;
+            this.y2 = y2;
+        }
+
+        boolean contains(int x, int y) {
+            return x >= x1 && x < x2 && y >= y1 && y < y2;
+        }
+
+        Box include(int x, int y) {
+            return new Box(Math.min(x1, Math.max(0, x - MARGIN)), Math.min(y1, Math.max(0, y - MARGIN)),
+                    Math.max(x2, x + MARGIN + 1), Math.max(y2, y + MARGIN + 1));
+        }
+    }
+
+    private static final Map<String, Box> boxes = new ConcurrentHashMap<>();
+
+    private static boolean enabled = false;
+
+    // True when a save is scheduled and the file does not contain the latest changes
+    private static final AtomicBoolean savePending = new AtomicBoolean(false);
+    private static final ScheduledExecutorService saveExecutor = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread saveThread = new Thread(r, "learned-bounds-save");
+        saveThread.setDaemon(true);
+        return saveThread;
+    });
+
+    static void setEnabled(boolean enabled) {
+        LearnedBounds.enabled = enabled;
+        BHBotUnity.logger.debug("Learned cue bounds: " + (enabled ? "enabled" : "disabled"));
+
+        if (enabled && boxes.isEmpty()) loadFromJSON();
+    }
+
+    /**
+     * @param cue the cue to search
+     * @return true if the cue search can be restricted using a learned box
+     */
+    static boolean isLearnable(Cue cue) {
+        return enabled && cue.bounds == null;
+    }
+
+    /**
+     * @param cueName the name of the cue
+     * @return the learned search bounds (with the same meaning of FindSubimage parameters) or null if the cue was never found
+     */
+    static Bounds get(String cueName) {
+        Box box = boxes.get(cueName);
+        return box != null ? new Bounds(box.x1, box.y1, box.x2, box.y2) : null;
+    }
+
+    /**
+     * Records the position where a cue has been found, widening its box if needed.
+     *
+     * @param cueName the name of the cue
+     * @param seg     the found segment
+     */
+    static void update(String cueName, MarvinSegment seg) {
+        Box box = boxes.get(cueName);
+        if (box != null && box.contains(seg.x1, seg.y1)) return;
+
+        // the box may be widened by another thread at the same time, so the change is applied atomically
+        Box newBox = boxes.compute(cueName, (name, oldBox) -> {
+            if (oldBox == null) return new Box(seg.x1, seg.y1, seg.x1, seg.y1).include(seg.x1, seg.y1);
+            return oldBox.contains(seg.x1, seg.y1) ? oldBox : oldBox.include(seg.x1, seg.y1);
+        });
+        BHBotUnity.logger.debug("Learned bounds for cue '" + cueName + "': x1=" + newBox.x1 + " y1=" + newBox.y1 + " x2=" + newBox.x2 + " y2=" + newBox.y2);
+
+        if (savePending.compareAndSet(false, true)) {
+            saveExecutor.schedule(LearnedBounds::flush, SAVE_DELAY, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * Writes the learned boxes to the JSON file, if they changed since the last save.
+     */
+    static void flush() {
+        if (savePending.getAndSet(false)) saveToJson();
+    }
+
+    private static void loadFromJSON() {
+        File boundsFile = new File(JSON_FILE_PATH);
+        if (!boundsFile.exists()) return;
+
+        Gson gson = new Gson();
+        try (JsonReader reader = new JsonReader(new FileReader(boundsFile))) {
+            Map<String, Box> loaded = gson.fromJson(reader, new TypeToken<TreeMap<String, Box>>(){}.getType());
+            if (loaded != null) boxes.putAll(loaded);
+
+            BHBotUnity.logger.debug("Loaded learned bounds for " + boxes.size() + " cues from JSON.");
+        } catch (IOException | JsonParseException e) {
+            BHBotUnity.logger.error("It was impossible to read learned cue bounds from JSON file.", e);
+        }
+    }
+
+    private static synchronized void saveToJson() {
+        Gson gson = new GsonBuilder().setPrettyPrinting()
+                .create();
+        String jsonString = gson.toJson(new TreeMap<>(boxes));
+
+        try (BufferedWriter writer = new BufferedWriter(new FileWriter(JSON_FILE_PATH))) {
+            writer.write(jsonString);
+        } catch (IOException e) {
+            BHBotUnity.logger.error("It was impossible to save learned cue bounds to JSON file", e);
+        }
+    }
+}
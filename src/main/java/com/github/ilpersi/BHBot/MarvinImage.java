@@ -2,6 +2,10 @@ package com.github.ilpersi.BHBot;
 
 import java.awt.*;
 import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.awt.image.RasterFormatException;
+import java.awt.image.SinglePixelPackedSampleModel;
+import java.awt.image.WritableRaster;
 
 /**
  * This class has been copied from <br>
@@ -27,6 +31,12 @@ public class MarvinImage implements Cloneable {
     protected int[] arrIntColor;
     protected boolean[] arrBinaryColor;
 
+    // Index of the first pixel and row length in arrIntColor: views over a Frame index the frame pixels directly
+    private int offset = 0;
+    private int stride;
+    // True when arrIntColor belongs to a Frame: it is copied before the first change, see detach()
+    private boolean shared = false;
+
     // Colors
     protected int r, b, g;
     protected Color color;
@@ -57,13 +67,7 @@ public class MarvinImage implements Cloneable {
      * @param img Image
      */
     public MarvinImage(BufferedImage img) {
-        this.image = img;
-        formatName = "jpg";
-        width = img.getWidth();
-        height = img.getHeight();
-        colorModel = COLOR_MODEL_RGB;
-        updateColorArray();
-        image = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
+        this(img, "jpg");
     }
 
     /**
@@ -79,7 +83,102 @@ public class MarvinImage implements Cloneable {
         height = img.getHeight();
         colorModel = COLOR_MODEL_RGB;
         updateColorArray();
-        image = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
+
+        // The output image is only allocated when it is needed, see image()
+        image = null;
+    }
+
+    /**
+     * Creates a MarvinImage working directly on the pixels of img, without copying them. Color changes and draw
+     * operations are applied in place: use this only for images that are not shared with other code.
+     * <p>
+     * Only TYPE_INT_ARGB images that are not sub images can be wrapped, for any other image a copy is created as with the
+     * standard constructor.
+     *
+     * @param img Image
+     * @return the MarvinImage
+     */
+    public static MarvinImage wrap(BufferedImage img) {
+        int[] data = wholeRasterData(img);
+        if (data == null) return new MarvinImage(img);
+
+        MarvinImage view = new MarvinImage();
+        view.image = img;
+        view.width = img.getWidth();
+        view.height = img.getHeight();
+        view.arrIntColor = data;
+        view.stride = view.width;
+        return view;
+    }
+
+    /**
+     * Creates a read-only view over the whole frame, see view(Frame, int, int, int, int).
+     *
+     * @param frame Frame
+     * @return the MarvinImage
+     */
+    static MarvinImage view(Frame frame) {
+        return view(frame, 0, 0, frame.width, frame.height);
+    }
+
+    /**
+     * Creates a MarvinImage over a region of a frame, without copying its pixels. Frames are shared between threads, so
+     * the pixels are only read: toBlackWhite writes its result in a new array and any other change copies the region
+     * first.
+     *
+     * @param frame Frame
+     * @param x     left side of the region
+     * @param y     top side of the region
+     * @param w     width of the region
+     * @param h     height of the region
+     * @return the MarvinImage
+     * @throws RasterFormatException if the region is outside the frame, as BufferedImage.getSubimage does
+     */
+    static MarvinImage view(Frame frame, int x, int y, int w, int h) {
+        if (x < 0 || y < 0 || w <= 0 || h <= 0 || x + w > frame.width || y + h > frame.height)
+            throw new RasterFormatException("Region " + x + "," + y + " " + w + "x" + h + " is outside of the frame");
+
+        MarvinImage view = new MarvinImage();
+        view.image = null;
+        view.width = w;
+        view.height = h;
+        view.arrIntColor = frame.pixels;
+        view.offset = (y * frame.width) + x;
+        view.stride = frame.width;
+        view.shared = true;
+        return view;
+    }
+
+    /**
+     * Copies the pixels of a view in an array owned by this image, so that they can be changed.
+     */
+    private void detach() {
+        int[] own = new int[width * height];
+        for (int y = 0; y < height; y++) {
+            System.arraycopy(arrIntColor, offset + (y * stride), own, y * width, width);
+        }
+        setIntColorArray(own);
+    }
+
+    private int index(int x, int y) {
+        return offset + (y * stride) + x;
+    }
+
+    /**
+     * @return the array backing a TYPE_INT_ARGB image, or null if the array contains pixels outside the image
+     */
+    private static int[] wholeRasterData(BufferedImage img) {
+        if (img.getType() != BufferedImage.TYPE_INT_ARGB) return null;
+
+        WritableRaster raster = img.getRaster();
+        if (!(raster.getDataBuffer() instanceof DataBufferInt dataBuffer)) return null;
+        if (!(raster.getSampleModel() instanceof SinglePixelPackedSampleModel sampleModel)) return null;
+
+        boolean whole = raster.getSampleModelTranslateX() == 0 && raster.getSampleModelTranslateY() == 0
+                && dataBuffer.getOffset() == 0 && sampleModel.getScanlineStride() == img.getWidth()
+                && dataBuffer.getSize() == img.getWidth() * img.getHeight();
+
+        return whole ? dataBuffer.getData() : null;
     }
 
     /**
@@ -139,19 +238,71 @@ public class MarvinImage implements Cloneable {
         return ret;
     }
 
+    /**
+     * Reads the pixels of the image. Images backed by an int array (also sub images) are copied row by row from the
+     * raster, without converting each pixel through the color model as getRGB does.
+     */
     public void updateColorArray() {
-        arrIntColor = image.getRGB(0, 0, image.getWidth(), image.getHeight(), null, 0, image.getWidth());
-//		arrIntColor = ((DataBufferInt) image.getRaster().getDataBuffer()).getData();
+        int w = image.getWidth(), h = image.getHeight();
+        int type = image.getType();
+        WritableRaster raster = image.getRaster();
+
+        if ((type == BufferedImage.TYPE_INT_ARGB || type == BufferedImage.TYPE_INT_RGB)
+                && raster.getDataBuffer() instanceof DataBufferInt dataBuffer
+                && raster.getSampleModel() instanceof SinglePixelPackedSampleModel sampleModel) {
+            int[] data = dataBuffer.getData();
+            int stride = sampleModel.getScanlineStride();
+            int offset = dataBuffer.getOffset() + sampleModel.getOffset(-raster.getSampleModelTranslateX(), -raster.getSampleModelTranslateY());
+
+            setIntColorArray(new int[w * h]);
+            for (int y = 0; y < h; y++) {
+                System.arraycopy(data, offset + (y * stride), arrIntColor, y * w, w);
+            }
+
+            // RGB images have no alpha, getRGB reports them as opaque
+            if (type == BufferedImage.TYPE_INT_RGB) {
+                for (int i = 0; i < arrIntColor.length; i++) arrIntColor[i] |= 0xFF000000;
+            }
+        } else {
+            setIntColorArray(image.getRGB(0, 0, w, h, null, 0, w));
+        }
     }
 
     public void update() {
-        int w = image.getWidth();
+        BufferedImage out = image();
+        int[] data = wholeRasterData(out);
+
         switch (colorModel) {
-            case COLOR_MODEL_RGB -> image.setRGB(0, 0, image.getWidth(), image.getHeight(), arrIntColor, 0, w);
-            case COLOR_MODEL_BINARY -> image.setRGB(0, 0, image.getWidth(), image.getHeight(), MarvinColorModelConverter.binaryToRgb(arrBinaryColor), 0, w);
+            case COLOR_MODEL_RGB -> {
+                // wrapped images already share their pixels with the MarvinImage
+                if (data == arrIntColor) return;
+
+                if (data != null) {
+                    for (int y = 0; y < height; y++) {
+                        System.arraycopy(arrIntColor, index(0, y), data, y * width, width);
+                    }
+                } else {
+                    out.setRGB(0, 0, width, height, arrIntColor, offset, stride);
+                }
+            }
+            case COLOR_MODEL_BINARY -> {
+                int[] rgb = data != null ? data : new int[width * height];
+                for (int i = 0; i < rgb.length; i++) {
+                    rgb[i] = arrBinaryColor[i] ? 0xFF000000 : 0xFFFFFFFF;
+                }
+                if (data == null) out.setRGB(0, 0, width, height, rgb, 0, width);
+            }
         }
     }
 
+    /**
+     * @return the image used as output of update(), allocated the first time it is needed
+     */
+    private BufferedImage image() {
+        if (image == null) image = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
+        return image;
+    }
+
     public void clear() {
         clear(0);
     }
@@ -168,7 +319,7 @@ public class MarvinImage implements Cloneable {
      * Gets the type
      */
     public int getType() {
-        return image.getType();
+        return image().getType();
     }
 
     public int getColorModel() {
@@ -201,10 +352,10 @@ public class MarvinImage implements Cloneable {
         switch (colorModel) {
             case COLOR_MODEL_RGB -> {
                 arrBinaryColor = null;
-                arrIntColor = new int[width * height];
+                setIntColorArray(new int[width * height]);
             }
             case COLOR_MODEL_BINARY -> {
-                arrIntColor = null;
+                setIntColorArray(null);
                 arrBinaryColor = new boolean[width * height];
             }
         }
@@ -214,6 +365,7 @@ public class MarvinImage implements Cloneable {
      * @return integer color array for the entire image.
      */
     public int[] getIntColorArray() {
+        if (shared) detach();
         return arrIntColor;
     }
 
@@ -222,6 +374,9 @@ public class MarvinImage implements Cloneable {
      **/
     public void setIntColorArray(int[] arr) {
         arrIntColor = arr;
+        offset = 0;
+        stride = width;
+        shared = false;
     }
 
     public boolean[] getBinaryColorArray() {
@@ -245,7 +400,7 @@ public class MarvinImage implements Cloneable {
      * @return integer color composition
      */
     public int getIntColor(int x, int y) {
-        return arrIntColor[y * width + x];
+        return arrIntColor[index(x, y)];
     }
 
     /**
@@ -254,9 +409,10 @@ public class MarvinImage implements Cloneable {
      * @param alpha alpha
      */
     public void setAlphaComponent(int x, int y, int alpha) {
-        int color = arrIntColor[((y * width + x))];
+        if (shared) detach();
+        int color = arrIntColor[index(x, y)];
         color = (alpha << 24) + (color & 0x00FFFFFF);
-        arrIntColor[((y * width + x))] = color;
+        arrIntColor[index(x, y)] = color;
     }
 
     /**
@@ -265,7 +421,7 @@ public class MarvinImage implements Cloneable {
      * @return alpha component
      */
     public int getAlphaComponent(int x, int y) {
-        return (arrIntColor[((y * width + x))] & 0xFF000000) >>> 24;
+        return (arrIntColor[index(x, y)] & 0xFF000000) >>> 24;
     }
 
     /**
@@ -276,7 +432,7 @@ public class MarvinImage implements Cloneable {
      * @return int        color component 0
      */
     public int getIntComponent0(int x, int y) {
-        return (arrIntColor[((y * width + x))] & 0x00FF0000) >>> 16;
+        return (arrIntColor[index(x, y)] & 0x00FF0000) >>> 16;
     }
 
     /**
@@ -287,7 +443,7 @@ public class MarvinImage implements Cloneable {
      * @return int color component 1
      */
     public int getIntComponent1(int x, int y) {
-        return (arrIntColor[((y * width + x))] & 0x0000FF00) >>> 8;
+        return (arrIntColor[index(x, y)] & 0x0000FF00) >>> 8;
     }
 
     /**
@@ -298,7 +454,7 @@ public class MarvinImage implements Cloneable {
      * @return int blue color
      */
     public int getIntComponent2(int x, int y) {
-        return (arrIntColor[((y * width + x))] & 0x000000FF);
+        return (arrIntColor[index(x, y)] & 0x000000FF);
     }
 
     /**
@@ -307,7 +463,7 @@ public class MarvinImage implements Cloneable {
      * @return int    width
      */
     public int getWidth() {
-        return (image.getWidth());
+        return width;
     }
 
     /**
@@ -316,7 +472,7 @@ public class MarvinImage implements Cloneable {
      * @return int    height
      */
     public int getHeight() {
-        return (image.getHeight());
+        return height;
     }
 
     public boolean isValidPosition(int x, int y) {
@@ -324,7 +480,8 @@ public class MarvinImage implements Cloneable {
     }
 
     public void setIntColor(int x, int y, int alpha, int color) {
-        arrIntColor[((y * image.getWidth() + x))] = (alpha << 24) + color;
+        if (shared) detach();
+        arrIntColor[index(x, y)] = (alpha << 24) + color;
     }
 
     /**
@@ -335,7 +492,8 @@ public class MarvinImage implements Cloneable {
      * @param color color value
      */
     public void setIntColor(int x, int y, int color) {
-        arrIntColor[((y * image.getWidth() + x))] = color;
+        if (shared) detach();
+        arrIntColor[index(x, y)] = color;
     }
 
     /**
@@ -348,7 +506,7 @@ public class MarvinImage implements Cloneable {
      * @param c2 component 2
      */
     public void setIntColor(int x, int y, int c0, int c1, int c2) {
-        int alpha = (arrIntColor[((y * width + x))] & 0xFF000000) >>> 24;
+        int alpha = (arrIntColor[index(x, y)] & 0xFF000000) >>> 24;
         setIntColor(x, y, alpha, c0, c1, c2);
     }
 
@@ -362,7 +520,8 @@ public class MarvinImage implements Cloneable {
      * @param c2 component 2
      */
     public void setIntColor(int x, int y, int alpha, int c0, int c1, int c2) {
-        arrIntColor[((y * image.getWidth() + x))] = (alpha << 24) +
+        if (shared) detach();
+        arrIntColor[index(x, y)] = (alpha << 24) +
                 (c0 << 16) +
                 (c1 << 8) +
                 c2;
@@ -372,7 +531,7 @@ public class MarvinImage implements Cloneable {
      * @return a BufferedImage associated with the MarvinImage
      */
     public BufferedImage getBufferedImage() {
-        return image;
+        return image();
     }
 
     /**
@@ -398,7 +557,7 @@ public class MarvinImage implements Cloneable {
                 pixels = width * height;
                 pixelData = new int[pixels];
                 for (int i = 0; i < pixels; i++) {
-                    pixelData[i] = arrIntColor[i] & 0x00FFFFFF;
+                    pixelData[i] = getIntColor(i % width, i / width) & 0x00FFFFFF;
                 }
                 image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
                 image.setRGB(0, 0, width, height, pixelData, 0, width);
@@ -509,8 +668,8 @@ public class MarvinImage implements Cloneable {
      * @return BufferedImage
      */
     public BufferedImage getNewImageInstance() {
-        BufferedImage buf = new BufferedImage(image.getWidth(), image.getHeight(), image.getType());
-        buf.setData(image.getData());
+        BufferedImage buf = new BufferedImage(width, height, getType());
+        buf.setData(image().getData());
         return buf;
     }
 
@@ -526,7 +685,7 @@ public class MarvinImage implements Cloneable {
         BufferedImage buf = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
         Graphics2D g2d = (Graphics2D) buf.getGraphics();
         g2d.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
-        g2d.drawImage(image, 0, 0, width, height, null);
+        g2d.drawImage(image(), 0, 0, width, height, null);
         g2d.dispose();
         return (buf);
     }
@@ -548,8 +707,8 @@ public class MarvinImage implements Cloneable {
                 imgHeight;
 
         double factor;
-        imgWidth = image.getWidth();
-        imgHeight = image.getHeight();
+        imgWidth = this.width;
+        imgHeight = this.height;
 
 
         if (type == PROPORTIONAL) {
@@ -575,10 +734,10 @@ public class MarvinImage implements Cloneable {
     public void resize(int w, int h) {
 
         // using the new approach of Java 2D API
-        BufferedImage buf = new BufferedImage(w, h, image.getType());
+        BufferedImage buf = new BufferedImage(w, h, getType());
         Graphics2D g2d = (Graphics2D) buf.getGraphics();
         g2d.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
-        g2d.drawImage(image, 0, 0, w, h, null);
+        g2d.drawImage(image(), 0, 0, w, h, null);
         g2d.dispose();
         image = buf;
         width = w;
@@ -592,7 +751,7 @@ public class MarvinImage implements Cloneable {
     @SuppressWarnings("MethodDoesntCallSuperMethod")
     public MarvinImage clone() {
         MarvinImage newMarvinImg = new MarvinImage(getWidth(), getHeight(), getColorModel());
-        BufferedImage newImage = new BufferedImage(image.getWidth(), image.getHeight(), BufferedImage.TYPE_INT_ARGB);
+        BufferedImage newImage = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
         newMarvinImg.setBufferedImage(newImage);
         MarvinImage.copyColorArray(this, newMarvinImg);
         newMarvinImg.update();
@@ -827,8 +986,9 @@ public class MarvinImage implements Cloneable {
             return false;
         }
 
+        int[] arrColor = getIntColorArray();
         for (int l_cont = 0; l_cont < getHeight(); l_cont++) {
-            if (arrIntColor[l_cont] != l_arrColor[l_cont]) {
+            if (arrColor[l_cont] != l_arrColor[l_cont]) {
                 return false;
             }
         }
@@ -842,22 +1002,25 @@ public class MarvinImage implements Cloneable {
      *               E.G for invasion defeat screen the number colour is 64,64,64 in the background
      */
     void toBlackWhite(Color black, Color white, int customMax) {
-        int[] map = getIntColorArray();
+        // views are converted in a new array, without copying the frame pixels first
+        int[] map = shared ? new int[width * height] : getIntColorArray();
         int white_rgb = white.getRGB();
         int black_rgb = black.getRGB();
-        for (int i = 0; i < map.length; i++) {
-            Color c = new Color(map[i], true);
-            int r = c.getRed();
-            int g = c.getGreen();
-            int b = c.getBlue();
-            int max = Misc.max(r, g, b);
-            int min = Misc.min(r, g, b);
-            //int diff = (max-r) + (max-g) + (max-b);
-            int diff = max - min;
-            if (diff >= 80 || (diff == 0 && max == customMax)) { // it's a number color
-                map[i] = white_rgb;
-            } else { // it's a blackish background
-                map[i] = black_rgb;
+        for (int y = 0, i = 0; y < height; y++) {
+            for (int x = 0, pixelIdx = index(0, y); x < width; x++, i++, pixelIdx++) {
+                int pixel = arrIntColor[pixelIdx];
+                int r = (pixel >> 16) & 0xFF;
+                int g = (pixel >> 8) & 0xFF;
+                int b = pixel & 0xFF;
+                int max = Misc.max(r, g, b);
+                int min = Misc.min(r, g, b);
+                //int diff = (max-r) + (max-g) + (max-b);
+                int diff = max - min;
+                if (diff >= 80 || (diff == 0 && max == customMax)) { // it's a number color
+                    map[i] = white_rgb;
+                } else { // it's a blackish background
+                    map[i] = black_rgb;
+                }
             }
         }
         setIntColorArray(map);
@@ -871,13 +1034,19 @@ public class MarvinImage implements Cloneable {
      * @param threshold The gray scale threshold
      */
     void toBlackWhite(int threshold) {
-        // We create a new MarvinImage with the B&W conversion
-        MarvinImage BWImage = MarvinColorModelConverter.rgbToBinary(this, threshold);
+        // Same conversion of MarvinColorModelConverter.rgbToBinary, without creating a temporary MarvinImage
+        boolean[] binaryColor = new boolean[width * height];
+        for (int y = 0, i = 0; y < height; y++) {
+            for (int x = 0, pixelIdx = index(0, y); x < width; x++, i++, pixelIdx++) {
+                int pixel = arrIntColor[pixelIdx];
+                int gray = (int) ((((pixel >> 16) & 0xFF) * 0.3) + (((pixel >> 8) & 0xFF) * 0.59) + ((pixel & 0xFF) * 0.11));
+                binaryColor[i] = gray <= threshold;
+            }
+        }
 
         // We update the properties of the current MarvinImage so that it is managed as a B&W Image
         colorModel = COLOR_MODEL_BINARY;
-        arrIntColor = null;
-        arrBinaryColor = new boolean[width * height];
-        copyBinaryColorArray(BWImage, this);
+        setIntColorArray(null);
+        arrBinaryColor = binaryColor;
     }
 }
\ No newline at end of file
@@ -7,6 +7,7 @@ import java.io.File;
 import java.io.IOException;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 
 /**
  * This class has been copied from <br>
@@ -41,12 +42,14 @@ public class MarvinSegment {
         this.area = this.width * this.height;
     }
 
-    // https://stackoverflow.com/questions/297762/find-known-sub-image-in-larger-image
-    static MarvinSegment findSubimage(BufferedImage src, Cue cue, BrowserManager browserManager) {
-        long timer = Misc.getTime();
-
-        MarvinSegment seg;
-
+    /**
+     * Computes the area where a cue is searched. Coordinates equal to 0 mean that no limit is set, as in FindSubimage.
+     *
+     * @param cue The cue to search
+     * @param browserManager The browser manager, used to understand if the do_not_share url offset must be applied
+     * @return the Bounds of the search area
+     */
+    static Bounds getSearchBounds(Cue cue, BrowserManager browserManager) {
         // Offset for do_not_share url missplacement of cues
         int x1, x2, y1, y2;
 
@@ -63,33 +66,61 @@ public class MarvinSegment {
             y2 = cue.bounds != null ? cue.bounds.y2 : 0;
         }
 
+        return new Bounds(x1, y1, x2, y2);
+    }
+
+    // https://stackoverflow.com/questions/297762/find-known-sub-image-in-larger-image
+    static MarvinSegment findSubimage(BufferedImage src, Cue cue, BrowserManager browserManager) {
+        return findSubimage(src, null, cue, browserManager);
+    }
+
+    static MarvinSegment findSubimage(Frame frame, Cue cue, BrowserManager browserManager) {
+        return findSubimage(frame.image, frame, cue, browserManager);
+    }
+
+    /**
+     * @param src   The image where to search the cue
+     * @param frame The decoded frame of src, may be null
+     */
+    private static MarvinSegment findSubimage(BufferedImage src, Frame frame, Cue cue, BrowserManager browserManager) {
+        long timer = Misc.getTime();
+
+        MarvinSegment seg;
+
+        Bounds searchBounds = getSearchBounds(cue, browserManager);
+        int x1 = searchBounds.x1, x2 = searchBounds.x2, y1 = searchBounds.y1, y2 = searchBounds.y2;
+
         if (BHBotUnity.debugFindImage) {
-            List<MarvinSegment> foundSegs = FindSubimage.findSubimage(src, cue.im, 1.0, false, false, x1, y1, x2, y2);
-            seg = foundSegs.isEmpty() ? null : foundSegs.get(0);
+            seg = FindSubimage.findImage(src, cue.kernel, cue.profile, x1, y1, x2, y2);
 
             final int OFFSET = 5;
             final int newWidth = cue.im.getWidth() + src.getWidth() + OFFSET;
             final int newHeight = Math.max(cue.im.getHeight(), src.getHeight()) + OFFSET;
-            Color highlight = foundSegs.isEmpty() ? Color.RED : Color.GREEN;
-            String match = foundSegs.isEmpty() ? "NO-MATCH" : "MATCH";
+            Color highlight = seg == null ? Color.RED : Color.GREEN;
+            String match = seg == null ? "NO-MATCH" : "MATCH";
 
-            BufferedImage mergeImg = new BufferedImage(newWidth, newHeight, BufferedImage.TYPE_INT_RGB);
+            BufferedImage mergeImg = new BufferedImage(newWidth, newHeight, BufferedImage.TYPE_INT_ARGB);
             Graphics g = mergeImg.getGraphics();
+            g.setColor(Color.BLACK);
+            g.fillRect(0, 0, newWidth, newHeight);
 
             g.drawImage(cue.im, OFFSET, OFFSET, null);
             g.drawImage(src, OFFSET + cue.im.getWidth(), OFFSET, null);
 
-            foundSegs = FindSubimage.findSubimage(mergeImg, cue.im, 1.0, true, false, x1, y1, x2, y2);
+            List<MarvinSegment> foundSegs = FindSubimage.findSubimage(mergeImg, cue.kernel, 1.0, true, false, x1, y1, x2, y2);
 
-            MarvinImage mainMarvinImg = new MarvinImage(mergeImg);
+            // mergeImg is only used here, so rectangles can be drawn directly on it
+            MarvinImage mainMarvinImg = MarvinImage.wrap(mergeImg);
             mainMarvinImg.drawRect(x1 + OFFSET + cue.im.getWidth(), y1 + OFFSET, x2 - x1, y2 - y1, Color.BLUE);
             foundSegs.forEach((foundSeg) -> mainMarvinImg.drawRect(foundSeg.x1 + OFFSET + cue.im.getWidth(), foundSeg.y1 + OFFSET, foundSeg.width, foundSeg.height, 2, highlight));
             mainMarvinImg.update();
 
             Misc.saveScreen("" + cue.name + "-" + match, "debugFindImage", BHBotUnity.includeMachineNameInScreenshots, mainMarvinImg.getBufferedImage());
 
+        } else if (frame != null) {
+            seg = DetectionMemo.find(frame, cue, searchBounds, () -> detect(src, frame, cue, x1, y1, x2, y2));
         } else {
-            seg = FindSubimage.findImage(src, cue.im, x1, y1, x2, y2);
+            seg = detect(src, null, cue, x1, y1, x2, y2);
         }
 
         //source.drawRect(seg.x1, seg.y1, seg.x2-seg.x1, seg.y2-seg.y1, Color.blue);
@@ -162,6 +193,25 @@ public class MarvinSegment {
         return seg;
     }
 
+    private static MarvinSegment detect(BufferedImage src, Frame frame, Cue cue, int x1, int y1, int x2, int y2) {
+        if (!LearnedBounds.isLearnable(cue)) return search(src, frame, cue, x1, y1, x2, y2);
+
+        // The learned box is searched first, the whole screen only when the cue is not there
+        Bounds learned = LearnedBounds.get(cue.name);
+        MarvinSegment seg = learned != null ? search(src, frame, cue, learned.x1, learned.y1, learned.x2, learned.y2) : null;
+        if (seg == null) {
+            seg = search(src, frame, cue, x1, y1, x2, y2);
+            if (seg != null) LearnedBounds.update(cue.name, seg);
+        }
+        return seg;
+    }
+
+    private static MarvinSegment search(BufferedImage src, Frame frame, Cue cue, int x1, int y1, int x2, int y2) {
+        if (CueHints.isEnabled()) return CueHints.find(src, frame, cue, x1, y1, x2, y2);
+
+        return frame != null ? FindSubimage.findImage(frame, cue.kernel, cue.profile, x1, y1, x2, y2) : FindSubimage.findImage(src, cue.kernel, cue.profile, x1, y1, x2, y2);
+    }
+
     /**
      * Will try (and retry) to detect cue from image until timeout is reached. May return null if cue has not been detected within given 'timeout' time. If 'timeout' is 0,
      * then it will attempt at cue detection only once and return the result immediately.
@@ -172,7 +222,7 @@ public class MarvinSegment {
         browserManager.readScreen();
 
         long timer = Misc.getTime();
-        MarvinSegment seg = findSubimage(browserManager.getImg(), cue, browserManager);
+        MarvinSegment seg = findSubimage(browserManager.getFrame(), cue, browserManager);
 
         double delay = INITIAL_DELAY;
         double attemptCnt = 1.0;
@@ -182,7 +232,7 @@ public class MarvinSegment {
                 break;
 
             browserManager.readScreen((int) delay, game);
-            seg = findSubimage(browserManager.getImg(), cue, browserManager);
+            seg = findSubimage(browserManager.getFrame(), cue, browserManager);
 
             attemptCnt += 1.0;
             delay += Math.pow(2.0, attemptCnt) * COEFFICIENT;
@@ -215,7 +265,7 @@ public class MarvinSegment {
 
     static boolean waitForNull(Cue cue, int timeout, @SuppressWarnings("SameParameterValue") boolean game, BrowserManager browserManager) {
         long timer = Misc.getTime();
-        MarvinSegment seg = findSubimage(browserManager.getImg(), cue, browserManager);
+        MarvinSegment seg = findSubimage(browserManager.getFrame(), cue, browserManager);
 
         double delay = INITIAL_DELAY;
         double attemptCnt = 1.0;
@@ -225,7 +275,7 @@ public class MarvinSegment {
                 return false;
 
             browserManager.readScreen((int) delay, game);
-            seg = findSubimage(browserManager.getImg(), cue, browserManager);
+            seg = findSubimage(browserManager.getFrame(), cue, browserManager);
 
             attemptCnt += 1.0;
             delay += Math.pow(2.0, attemptCnt) * COEFFICIENT;
@@ -237,6 +287,65 @@ public class MarvinSegment {
         return true;
     }
 
+    /**
+     * A cue found by waitForAny
+     *
+     * @param cue the found cue
+     * @param seg where the cue was found
+     */
+    record CueMatch(Cue cue, MarvinSegment seg) {
+        boolean is(String cueName) {
+            return cue.name.equals(cueName);
+        }
+    }
+
+    /**
+     * Will try (and retry) to detect any of the cues until timeout is reached. Each attempt reads the screen once and
+     * searches all the cues on the same frame using a CueSet. If 'timeout' is 0, then it will attempt at cue detection
+     * only once and return the result immediately.
+     *
+     * @param timeout        maximum time to wait for any of the cues
+     * @param browserManager The browser manager used to perform the search
+     * @param cues           The cues to search, when more than one is found the first one in this order is returned
+     * @return the first found cue and its position or null if none of the cues was found
+     */
+    static CueMatch waitForAny(int timeout, BrowserManager browserManager, Cue... cues) {
+        CueSet cueSet = new CueSet(cues);
+
+        // We make sure to read the screen before starting
+        browserManager.readScreen();
+
+        long timer = Misc.getTime();
+        CueMatch match = firstMatch(cueSet.find(browserManager.getFrame(), browserManager), cues);
+
+        double delay = INITIAL_DELAY;
+        double attemptCnt = 1.0;
+
+        while (match == null) {
+            if ((Misc.getTime() - timer) >= timeout)
+                break;
+
+            browserManager.readScreen((int) delay, true);
+            match = firstMatch(cueSet.find(browserManager.getFrame(), browserManager), cues);
+
+            attemptCnt += 1.0;
+            delay += Math.pow(2.0, attemptCnt) * COEFFICIENT;
+
+            if (delay > MAX_DELAY) delay = MAX_DELAY;
+
+        }
+
+        return match;
+    }
+
+    private static CueMatch firstMatch(Map<String, MarvinSegment> found, Cue... cues) {
+        for (Cue cue : cues) {
+            MarvinSegment seg = found.get(cue.name);
+            if (seg != null) return new CueMatch(cue, seg);
+        }
+        return null;
+    }
+
     static MarvinSegment fromCue(Cue cue, BrowserManager browserManager) {
         return fromCue(cue, 0, true, browserManager);
     }
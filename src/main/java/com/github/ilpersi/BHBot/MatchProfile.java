@@ -0,0 +1,49 @@
+package com.github.ilpersi.BHBot;
+
+/**
+ * Describes how a cue is matched against the screen. Most cues use the default profile: each channel of each opaque
+ * pixel must be within 5 from the screen and all the pixels must match. Cues affected by rendering jitter can be
+ * declared with a higher tolerance or a lower similarity in CueManager.
+ */
+class MatchProfile {
+
+    static final MatchProfile DEFAULT = new MatchProfile(5, 1.0, false);
+
+    // Maximum difference allowed on each color channel
+    final int tolerance;
+    // Minimum ratio of matching pixels, transparent pixels included
+    final double similarity;
+    // When true, transparent pixels of the cue must be dark on the screen (see FindSubimage)
+    final boolean treatTransparentAsObscured;
+
+    MatchProfile(int tolerance, double similarity, boolean treatTransparentAsObscured) {
+        this.tolerance = tolerance;
+        this.similarity = similarity;
+        this.treatTransparentAsObscured = treatTransparentAsObscured;
+    }
+
+    /**
+     * @param similarity Minimum ratio of matching pixels
+     * @return a profile with the default tolerance and the given similarity
+     */
+    static MatchProfile fromSimilarity(double similarity) {
+        return new MatchProfile(DEFAULT.tolerance, similarity, false);
+    }
+
+    /**
+     * @param kernel the cue
+     * @return how many pixels of the cue can mismatch before a candidate position is discarded
+     */
+    double mismatchBudget(CueKernel kernel) {
+        return (1 - similarity) * kernel.pixels;
+    }
+
+    @Override
+    public String toString() {
+        return "MatchProfile [" +
+                "tolerance=" + tolerance +
+                ", similarity=" + similarity +
+                ", treatTransparentAsObscured=" + treatTransparentAsObscured +
+                ']';
+    }
+}
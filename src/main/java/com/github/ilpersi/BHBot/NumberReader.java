@@ -0,0 +1,279 @@
+package com.github.ilpersi.BHBot;
+
+import java.awt.image.BufferedImage;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Reads numbers from small black and white images, using a set of glyph cues (one cue for each digit, plus optional
+ * separators). The image is decoded once and all the glyphs are searched in a single pass, instead of running a full
+ * search for each digit.
+ * <p>
+ * Digit cues are bright glyphs on a dark background: before the pass, each column and row of the image is flagged as
+ * "ink" if it contains at least one bright pixel. A glyph can only match at positions where all its bright columns and
+ * rows fall on ink ones, so every glyph is looked up with bit masks of its columns and rows and the full matcher only
+ * runs on the few positions passing this test. Results are the same of FindSubimage.findSubimage with findAll set to true.
+ * <p>
+ * Images with two colors at most (the output of MarvinImage.toBlackWhite) are converted to a BinaryImage and glyphs are
+ * compared 64 pixels at a time. The pixel matcher is only used when the image has more colors or when a glyph can't be
+ * represented in black and white.
+ */
+class NumberReader {
+
+    /**
+     * A glyph found in the image
+     *
+     * @param value the value associated with the glyph cue
+     * @param x     left side of the glyph in the image
+     * @param y     top side of the glyph in the image
+     */
+    record Glyph(String value, int x, int y) {
+        @Override
+        public String toString() {
+            return value;
+        }
+    }
+
+    // Pixels whose channel sum is above this value are ink
+    private static final int INK_THRESHOLD = 382;
+    // Glyph pixels are bright when any pixel matching them (tolerance of 5 for each channel) is ink
+    private static final int BRIGHT_THRESHOLD = INK_THRESHOLD + 15;
+
+    private final List<String> cueNames = new ArrayList<>();
+    private final List<String> values = new ArrayList<>();
+
+    /**
+     * @param cueName the name of the glyph cue
+     * @param value   the value returned when the glyph is found
+     * @return this reader
+     */
+    NumberReader addGlyph(String cueName, String value) {
+        cueNames.add(cueName);
+        values.add(value);
+        return this;
+    }
+
+    /**
+     * @param numberPrefix The prefix of the digit cues, the digit is appended to get the cue name
+     * @param intToSkip    Digits without a cue
+     * @param descending   When true, digits are added from 9 to 0
+     * @return a reader for the digits
+     */
+    static NumberReader forDigits(String numberPrefix, Set<Integer> intToSkip, boolean descending) {
+        NumberReader reader = new NumberReader();
+
+        for (int i = 0; i < 10; i++) {
+            int digit = descending ? 9 - i : i;
+            if (intToSkip.contains(digit)) continue;
+            reader.addGlyph(numberPrefix + digit, Integer.toString(digit));
+        }
+
+        return reader;
+    }
+
+    List<Glyph> read(BufferedImage im) {
+        return read(new Frame(im));
+    }
+
+    /**
+     * @param frame the frame to read
+     * @return the found glyphs ordered horizontally. Glyphs at the same position follow the order they were added
+     */
+    List<Glyph> read(Frame frame) {
+        BinaryImage binary = BinaryImage.fromPixels(frame.pixels, frame.width, frame.height);
+        List<Glyph> glyphs = binary != null ? readBinary(binary) : null;
+
+        return glyphs != null ? glyphs : readPixels(frame.pixels, frame.width, frame.height);
+    }
+
+    /**
+     * @param im a black and white image, there is no need to call update after toBlackWhite
+     * @return the found glyphs ordered horizontally
+     */
+    List<Glyph> read(MarvinImage im) {
+        BinaryImage binary = BinaryImage.fromMarvinImage(im);
+        if (binary != null) return read(binary);
+
+        im.update();
+        return read(im.getBufferedImage());
+    }
+
+    /**
+     * @param binary the black and white image
+     * @return the found glyphs ordered horizontally
+     */
+    List<Glyph> read(BinaryImage binary) {
+        List<Glyph> glyphs = readBinary(binary);
+
+        return glyphs != null ? glyphs : readPixels(binary.toRGB(), binary.width, binary.height);
+    }
+
+    private List<Glyph> readPixels(int[] pixels, int width, int height) {
+        // glyph column (and row) segmentation
+        boolean[] inkColumns = new boolean[width];
+        boolean[] inkRows = new boolean[height];
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                if (channelSum(pixels[(y * width) + x]) > INK_THRESHOLD) {
+                    inkColumns[x] = true;
+                    inkRows[y] = true;
+                }
+            }
+        }
+        long[] columnWindows = inkWindows(inkColumns);
+        long[] rowWindows = inkWindows(inkRows);
+
+        CueKernel[] kernels = new CueKernel[cueNames.size()];
+        int[][] opaqueOffsets = new int[kernels.length][];
+        boolean[][] candidateColumns = new boolean[kernels.length][];
+        boolean[][] candidateRows = new boolean[kernels.length][];
+        List<List<MarvinSegment>> found = new ArrayList<>(kernels.length);
+
+        for (int k = 0; k < kernels.length; k++) {
+            kernels[k] = BHBotUnity.cues.get(cueNames.get(k)).kernel;
+            opaqueOffsets[k] = kernels[k].opaqueOffsets(width);
+            candidateColumns[k] = candidates(brightMask(kernels[k].opaqueX, kernels[k]), columnWindows);
+            candidateRows[k] = candidates(brightMask(kernels[k].opaqueY, kernels[k]), rowWindows);
+            found.add(new ArrayList<>());
+        }
+
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                for (int k = 0; k < kernels.length; k++) {
+                    CueKernel kernel = kernels[k];
+
+                    if (!candidateColumns[k][x] || !candidateRows[k][y]) continue;
+                    if (y + kernel.height >= height || x + kernel.width >= width) continue;
+                    if (FindSubimage.isProcessed(found.get(k), x, y, kernel.width, kernel.height)) continue;
+
+                    if (FindSubimage.matchesAt(pixels, width, (y * width) + x, kernel, opaqueOffsets[k], FindSubimage.NO_OFFSETS, MatchProfile.DEFAULT.tolerance, 0, false)) {
+                        found.get(k).add(new MarvinSegment(x, y, x + kernel.width, y + kernel.height));
+                    }
+                }
+            }
+        }
+
+        return toGlyphs(found);
+    }
+
+    /**
+     * Same search of readPixels, using the binary kernels of the glyphs.
+     *
+     * @return the found glyphs or null if one of the glyphs has no binary kernel
+     */
+    private List<Glyph> readBinary(BinaryImage binary) {
+        int width = binary.width;
+        int height = binary.height;
+
+        // glyph column (and row) segmentation: white pixels are ink
+        long[] columnBits = new long[binary.wordsPerRow];
+        boolean[] inkRows = new boolean[height];
+        for (int y = 0; y < height; y++) {
+            for (int word = 0; word < binary.wordsPerRow; word++) {
+                long bits = binary.bits[(y * binary.wordsPerRow) + word];
+                columnBits[word] |= bits;
+                if (bits != 0) inkRows[y] = true;
+            }
+        }
+        boolean[] inkColumns = new boolean[width];
+        for (int x = 0; x < width; x++) {
+            inkColumns[x] = (columnBits[x >>> 6] & (1L << x)) != 0;
+        }
+        long[] columnWindows = inkWindows(inkColumns);
+        long[] rowWindows = inkWindows(inkRows);
+
+        BinaryKernel[] kernels = new BinaryKernel[cueNames.size()];
+        boolean[][] candidateColumns = new boolean[kernels.length][];
+        boolean[][] candidateRows = new boolean[kernels.length][];
+        List<List<MarvinSegment>> found = new ArrayList<>(kernels.length);
+
+        for (int k = 0; k < kernels.length; k++) {
+            kernels[k] = BHBotUnity.cues.get(cueNames.get(k)).kernel.getBinary(binary.blackRGB, binary.whiteRGB);
+            if (kernels[k] == null) return null;
+
+            candidateColumns[k] = candidates(kernels[k].whiteColumns, columnWindows);
+            candidateRows[k] = candidates(kernels[k].whiteRows, rowWindows);
+            found.add(new ArrayList<>());
+        }
+
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                for (int k = 0; k < kernels.length; k++) {
+                    BinaryKernel kernel = kernels[k];
+
+                    if (!candidateColumns[k][x] || !candidateRows[k][y]) continue;
+                    if (y + kernel.height >= height || x + kernel.width >= width) continue;
+                    if (FindSubimage.isProcessed(found.get(k), x, y, kernel.width, kernel.height)) continue;
+
+                    if (kernel.matchesAt(binary, x, y)) {
+                        found.get(k).add(new MarvinSegment(x, y, x + kernel.width, y + kernel.height));
+                    }
+                }
+            }
+        }
+
+        return toGlyphs(found);
+    }
+
+    /**
+     * @param found for each glyph, the segments where it was found
+     * @return the found glyphs ordered horizontally. Glyphs at the same position follow the order they were added
+     */
+    private List<Glyph> toGlyphs(List<List<MarvinSegment>> found) {
+        List<Glyph> glyphs = new ArrayList<>();
+        for (int k = 0; k < found.size(); k++) {
+            for (MarvinSegment seg : found.get(k)) {
+                glyphs.add(new Glyph(values.get(k), seg.x1, seg.y1));
+            }
+        }
+
+        // stable sort, so glyphs at the same position keep the order they were added
+        glyphs.sort(Comparator.comparingInt(Glyph::x));
+        return glyphs;
+    }
+
+    /**
+     * @param ink for each column (or row) of the image, true if it contains ink
+     * @return for each column (or row), the ink ones starting from it as a bit mask
+     */
+    private static long[] inkWindows(boolean[] ink) {
+        long[] windows = new long[ink.length];
+        for (int i = 0; i < ink.length; i++) {
+            for (int c = 0; c < Long.SIZE && i + c < ink.length; c++) {
+                if (ink[i + c]) windows[i] |= 1L << c;
+            }
+        }
+        return windows;
+    }
+
+    /**
+     * @param coordinates the x (or y) coordinates of the glyph opaque pixels
+     * @return the columns (or rows) of the glyph with bright pixels as a bit mask, ink is required in each of them
+     */
+    private static long brightMask(int[] coordinates, CueKernel kernel) {
+        long mask = 0;
+        for (int k = 0; k < coordinates.length; k++) {
+            if (coordinates[k] < Long.SIZE && kernel.red[k] + kernel.green[k] + kernel.blue[k] > BRIGHT_THRESHOLD) {
+                mask |= 1L << coordinates[k];
+            }
+        }
+        return mask;
+    }
+
+    /**
+     * @return for each column (or row) of the image, true if the glyph may start there
+     */
+    private static boolean[] candidates(long brightMask, long[] inkWindows) {
+        boolean[] candidates = new boolean[inkWindows.length];
+        for (int i = 0; i < inkWindows.length; i++) {
+            candidates[i] = (inkWindows[i] & brightMask) == brightMask;
+        }
+        return candidates;
+    }
+
+    private static int channelSum(int pixel) {
+        return ((pixel >> 16) & 0xff) + ((pixel >> 8) & 0xff) + (pixel & 0xff);
+    }
+}
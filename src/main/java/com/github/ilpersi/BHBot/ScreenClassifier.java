@@ -0,0 +1,135 @@
+package com.github.ilpersi.BHBot;
+
+import java.util.*;
+
+/**
+ * Labels a frame with the game screen it shows. Each known screen is identified by a small set of cues (its
+ * fingerprint) and the fingerprints of all the screens are searched together in a single CueSet pass, so that callers
+ * can check the screen they are on without running a separate detection (and taking a new screenshot) for each cue.
+ * <p>
+ * The result of the last classification is kept, so classifying the same frame more than once is free.
+ */
+class ScreenClassifier {
+
+    /**
+     * Known screens, in priority order: when the fingerprints of more than one screen are found, the first one wins.
+     * Popups come first, in the same order BlockerThread handles them, and dialogs follow as they are displayed on top
+     * of the other screens.
+     */
+    enum Screen {
+        UNABLE_TO_CONNECT("UnableToConnect"),
+        MAINTENANCE("Maintenance"),
+        DISCONNECTED(List.of("Disconnected", "Connecting"), "UhOh"),
+        NOT_IN_A_GUILD(List.of("NotInAGuild"), "UhOh"),
+        RELOAD("Reload"),
+        ARE_YOU_THERE("AreYouThere"),
+        GEAR_CHECK("GearCheck"),
+        IN_GAME_PM("InGamePM"),
+        DAILY_REWARDS("DailyRewards"),
+        RECENTLY_DISCONNECTED("RecentlyDisconnected"),
+        NEWS("News"),
+        FISHING_BAITS("Fishing_Bait"),
+        CHARACTER_DIALOG("DialogLeft", "DialogRight"),
+        ADVENTURE("AutoOn", "AutoOff"),
+        MAIN("Main"),
+        UNKNOWN;
+
+        // The screen is recognized when any of these cues is found
+        private final List<String> cueNames;
+        // When not null, this cue must be found too (e.g. the "Uh oh" frame shared by several popups)
+        private final String requiredCue;
+
+        Screen(String... cueNames) {
+            this(List.of(cueNames), null);
+        }
+
+        Screen(List<String> cueNames, String requiredCue) {
+            this.cueNames = cueNames;
+            this.requiredCue = requiredCue;
+        }
+
+        private boolean matches(Map<String, MarvinSegment> segments) {
+            if (requiredCue != null && !segments.containsKey(requiredCue)) return false;
+            return cueNames.stream().anyMatch(segments::containsKey);
+        }
+    }
+
+    // Fingerprints searched with different bounds than the ones of the CueManager
+    private static final Map<String, Bounds> FINGERPRINT_BOUNDS = Map.of(
+            "Fishing_Bait", Bounds.fromWidthHeight(243, 190, 297, 154)
+    );
+
+    /**
+     * @param frame    the classified frame
+     * @param screen   the screen shown in the frame
+     * @param segments the found fingerprint cues, with cue names as keys
+     */
+    record Result(Frame frame, Screen screen, Map<String, MarvinSegment> segments) {
+
+        boolean is(Screen screen) {
+            return this.screen == screen;
+        }
+
+        /**
+         * @param cueName the name of one of the fingerprint cues
+         * @return the segment where the cue was found or null
+         */
+        MarvinSegment get(String cueName) {
+            return segments.get(cueName);
+        }
+    }
+
+    private static volatile Result lastResult;
+
+    /**
+     * Reads the screen and classifies it.
+     *
+     * @param browserManager The browser manager used to read the screen
+     * @return the classification of the new frame
+     */
+    static Result fromScreen(BrowserManager browserManager) {
+        browserManager.readScreen();
+        return classify(browserManager.getFrame(), browserManager);
+    }
+
+    /**
+     * @param frame          The frame to classify
+     * @param browserManager The browser manager, used to compute the search bounds of the cues
+     * @return the classification of the frame
+     */
+    static Result classify(Frame frame, BrowserManager browserManager) {
+        Result result = lastResult;
+        if (result != null && result.frame == frame) return result;
+
+        // The set is built on each call as cues can be reloaded at runtime, this is cheap compared to the search
+        Map<String, MarvinSegment> segments = getFingerprints().find(frame, browserManager);
+
+        Screen screen = Screen.UNKNOWN;
+        for (Screen candidate : Screen.values()) {
+            if (candidate.matches(segments)) {
+                screen = candidate;
+                break;
+            }
+        }
+
+        result = new Result(frame, screen, segments);
+        lastResult = result;
+        return result;
+    }
+
+    private static CueSet getFingerprints() {
+        Set<String> cueNames = new LinkedHashSet<>();
+        for (Screen screen : Screen.values()) {
+            if (screen.requiredCue != null) cueNames.add(screen.requiredCue);
+            cueNames.addAll(screen.cueNames);
+        }
+
+        List<Cue> cues = new ArrayList<>();
+        for (String cueName : cueNames) {
+            Cue cue = BHBotUnity.cues.get(cueName);
+            Bounds bounds = FINGERPRINT_BOUNDS.get(cueName);
+            cues.add(bounds != null ? new Cue(cue, bounds) : cue);
+        }
+        return new CueSet(cues);
+    }
+}
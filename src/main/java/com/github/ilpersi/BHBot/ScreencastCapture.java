@@ -0,0 +1,205 @@
+package com.github.ilpersi.BHBot;
+
+import org.openqa.selenium.WebDriver;
+import org.openqa.selenium.devtools.Command;
+import org.openqa.selenium.devtools.DevTools;
+import org.openqa.selenium.devtools.Event;
+import org.openqa.selenium.devtools.HasDevTools;
+import org.openqa.selenium.json.Json;
+import org.openqa.selenium.remote.Augmenter;
+
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.util.Base64;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Push based capture of the browser viewport for Chrome sessions. The DevTools Page.startScreencast command makes the
+ * browser send a new frame each time the page is painted, so the latest frame is always ready and readScreen does not
+ * need a screenshot round trip.
+ * <p>
+ * The browser only sends the next frame once the previous one is acknowledged: acks are delayed so that frames are
+ * received at most once every ackDelay milliseconds, limiting the CPU used by the browser to encode them.
+ * <p>
+ * Frames are decoded in an image of the pool that is kept by the capture, callers receive a pooled copy of it or of
+ * the region they need.
+ * <p>
+ * The CDP commands are sent using their raw names, so the capture does not depend on the Chrome version.
+ */
+class ScreencastCapture {
+
+    private static final Event<Map<String, Object>> SCREENCAST_FRAME = new Event<>("Page.screencastFrame", input -> input.read(Json.MAP_TYPE));
+
+    private final DevTools devTools;
+    private final int ackDelay;
+    private final ImagePool imagePool;
+    private final ScheduledExecutorService ackExecutor = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread ackThread = new Thread(r, "screencast-ack");
+        ackThread.setDaemon(true);
+        return ackThread;
+    });
+
+    // The last received frame: PNG data and when it was painted, guarded by frameLock that is notified on each frame
+    private final Object frameLock = new Object();
+    private byte[] latestData;
+    private long latestTime;
+    // The decoded image of the last requested frame and its paint time, guarded by this
+    private BufferedImage latestImage;
+    private byte[] latestImageData;
+    private long latestImageTime;
+
+    private long lastAckTime = 0;
+
+    private ScreencastCapture(DevTools devTools, int ackDelay, ImagePool imagePool) {
+        this.devTools = devTools;
+        this.ackDelay = ackDelay;
+        this.imagePool = imagePool;
+    }
+
+    /**
+     * @param driver    the Chrome driver
+     * @param ackDelay  minimum time between two received frames, in milliseconds
+     * @param imagePool the pool used to decode the frames
+     * @return the started capture or null if DevTools is not available for the driver
+     */
+    static ScreencastCapture start(WebDriver driver, int ackDelay, ImagePool imagePool) {
+        try {
+            WebDriver devToolsDriver = driver instanceof HasDevTools ? driver : new Augmenter().augment(driver);
+            if (!(devToolsDriver instanceof HasDevTools)) {
+                BHBotUnity.logger.warn("DevTools are not available, screenshots will be used to read the screen.");
+                return null;
+            }
+
+            DevTools devTools = ((HasDevTools) devToolsDriver).getDevTools();
+            devTools.createSessionIfThereIsNotOne();
+
+            ScreencastCapture capture = new ScreencastCapture(devTools, ackDelay, imagePool);
+            devTools.addListener(SCREENCAST_FRAME, capture::onFrame);
+            devTools.send(new Command<Void>("Page.startScreencast", Map.of("format", "png", "everyNthFrame", 1)));
+
+            BHBotUnity.logger.info("Screencast capture started.");
+            return capture;
+        } catch (Exception e) {
+            BHBotUnity.logger.warn("It was impossible to start the screencast, screenshots will be used to read the screen.", e);
+            return null;
+        }
+    }
+
+    private void onFrame(Map<String, Object> frame) {
+        byte[] data = Base64.getDecoder().decode((String) frame.get("data"));
+        long receiveTime = Misc.getTime();
+
+        synchronized (frameLock) {
+            latestData = data;
+            latestTime = paintTime(frame, receiveTime);
+            frameLock.notifyAll();
+        }
+
+        Object sessionId = frame.get("sessionId");
+        long ackTime = Math.max(receiveTime, lastAckTime + ackDelay);
+        lastAckTime = ackTime;
+
+        ackExecutor.schedule(() -> {
+            try {
+                devTools.send(new Command<Void>("Page.screencastFrameAck", Map.of("sessionId", sessionId)));
+            } catch (Exception e) {
+                BHBotUnity.logger.trace("Error while acknowledging a screencast frame.", e);
+            }
+        }, ackTime - receiveTime, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Frames can be received well after they are painted (e.g. when the ack was delayed), so their freshness is based
+     * on the paint time sent by the browser, in seconds since the epoch.
+     *
+     * @return when the frame was painted, in milliseconds, or receiveTime if the browser did not send it
+     */
+    private static long paintTime(Map<String, Object> frame, long receiveTime) {
+        if (frame.get("metadata") instanceof Map<?, ?> metadata && metadata.get("timestamp") instanceof Number timestamp)
+            return Math.min(receiveTime, (long) (timestamp.doubleValue() * 1000));
+
+        return receiveTime;
+    }
+
+    /**
+     * @param notBefore the frame must be painted at this time or later, in milliseconds
+     * @param timeout   maximum time to wait for such a frame, in milliseconds
+     * @return a copy of the latest frame of the viewport, timestamped with its paint time, or null if no frame was
+     * received in time
+     */
+    synchronized FrameBus.Screenshot getFrame(long notBefore, int timeout) {
+        if (!decodeLatest(notBefore, timeout)) return null;
+
+        return new FrameBus.Screenshot(imagePool.copy(latestImage, 0, 0, latestImage.getWidth(), latestImage.getHeight()), latestImageTime);
+    }
+
+    /**
+     * Copies a region of the latest frame, so that the rest of the viewport is never copied.
+     *
+     * @param notBefore the frame must be painted at this time or later, in milliseconds
+     * @param timeout   maximum time to wait for such a frame, in milliseconds
+     * @return a copy of the region, timestamped with its paint time, or null if no frame was received in time
+     * @throws java.awt.image.RasterFormatException if the region is outside the viewport
+     */
+    synchronized FrameBus.Screenshot getFrame(long notBefore, int timeout, int x, int y, int width, int height) {
+        if (!decodeLatest(notBefore, timeout)) return null;
+
+        return new FrameBus.Screenshot(imagePool.copy(latestImage, x, y, width, height), latestImageTime);
+    }
+
+    /**
+     * Waits for a recent frame and decodes it in latestImage, must be called holding the lock of the capture.
+     *
+     * @return false if no frame was received in time or it could not be decoded
+     */
+    private boolean decodeLatest(long notBefore, int timeout) {
+        long deadline = Misc.getTime() + timeout;
+        byte[] data;
+        long time;
+        synchronized (frameLock) {
+            while (latestData == null || latestTime < notBefore) {
+                long remaining = deadline - Misc.getTime();
+                if (remaining <= 0) return false;
+                try {
+                    frameLock.wait(remaining);
+                } catch (InterruptedException e) {
+                    BHBotUnity.logger.debug("Interrupting screencast wait");
+                    Thread.currentThread().interrupt();
+                    return false;
+                }
+            }
+            data = latestData;
+            time = latestTime;
+        }
+
+        // The same frame is only decoded once
+        if (data != latestImageData) {
+            BufferedImage decoded;
+            try {
+                decoded = imagePool.decode(data);
+            } catch (IOException e) {
+                BHBotUnity.logger.debug("Error while decoding a screencast frame.", e);
+                return false;
+            }
+            imagePool.release(latestImage);
+            latestImage = decoded;
+            latestImageData = data;
+            latestImageTime = time;
+        }
+
+        return true;
+    }
+
+    void stop() {
+        try {
+            devTools.clearListeners();
+            devTools.send(new Command<Void>("Page.stopScreencast", Map.of()));
+        } catch (Exception e) {
+            BHBotUnity.logger.trace("Error while stopping the screencast.", e);
+        }
+        ackExecutor.shutdownNow();
+    }
+}
@@ -306,6 +306,12 @@ public class Settings {
     boolean useFirefox = false; // if true, then Unity cues will be loaded
     boolean dumpReadScreen = false; // if true, everytime a readScreen is performed, the image is saved. Huge performance hog!
     boolean hideWindowOnRestart = false; // if true, game window will be hidden upon driver (re)start
+    boolean useVectorMatching = false; // if true, cues are matched using the Vector API (requires --add-modules jdk.incubator.vector)
+    int cueSearchThreads = 1; // how many threads are used to search cues with large bounds, 1 means no parallel search
+    boolean useCueHints = false; // if true, the last position of each cue is checked before searching its bounds
+    boolean learnCueBounds = false; // if true, cues without bounds are searched where they were found before
+    String captureMode = "screenshot"; // how the game screen is read: screenshot, clip, screencast or canvas (clip and screencast are Chrome only)
+    int screencastAckDelay = 100; // minimum time in milliseconds between two frames sent by the screencast
     int reconnectTimer = 60;
     int tooManyLoginsTimer = 60;
     boolean idleMode = false;
@@ -559,6 +565,7 @@ public class Settings {
         costInvasion = 1;
         costPVP = 1;
         costTrials = 1;
+        cueSearchThreads = 1;
         debugBoot = false;
         debugDetectionTimes = false;
         debugFindImage = false;
@@ -633,6 +640,11 @@ public class Settings {
         dumpReadScreen = false;
         useHeadlessMode = false;
         useLegacyAdventureClose = false;
+        useVectorMatching = false;
+        useCueHints = false;
+        learnCueBounds = false;
+        captureMode = "screenshot";
+        screencastAckDelay = 100;
         username = "";
         victoryScreenshot = false;
         warningSettingLInes = new ArrayList<>();
@@ -1508,6 +1520,12 @@ public class Settings {
         useFirefox = lastUsedMap.getOrDefault("useFirefox", useFirefox ? "1" : "0").equals("1");
         dumpReadScreen = lastUsedMap.getOrDefault("dumpReadScreen", dumpReadScreen ? "1" : "0").equals("1");
         hideWindowOnRestart = lastUsedMap.getOrDefault("hideWindowOnRestart", hideWindowOnRestart ? "1" : "0").equals("1");
+        useVectorMatching = lastUsedMap.getOrDefault("useVectorMatching", useVectorMatching ? "1" : "0").equals("1");
+        cueSearchThreads = Integer.parseInt(lastUsedMap.getOrDefault("cueSearchThreads", "" + cueSearchThreads));
+        useCueHints = lastUsedMap.getOrDefault("useCueHints", useCueHints ? "1" : "0").equals("1");
+        learnCueBounds = lastUsedMap.getOrDefault("learnCueBounds", learnCueBounds ? "1" : "0").equals("1");
+        captureMode = lastUsedMap.getOrDefault("captureMode", captureMode);
+        screencastAckDelay = Integer.parseInt(lastUsedMap.getOrDefault("screencastAckDelay", "" + screencastAckDelay));
         resetTimersOnBattleEnd = lastUsedMap.getOrDefault("resetTimersOnBattleEnd", resetTimersOnBattleEnd ? "1" : "0").equals("1");
         useLegacyAdventureClose = lastUsedMap.getOrDefault("useLegacyAdventureClose", useLegacyAdventureClose ? "1" : "0").equals("1");
         autoStartChromeDriver = lastUsedMap.getOrDefault("autoStartChromeDriver", autoStartChromeDriver ? "1" : "0").equals("1");
@@ -0,0 +1,86 @@
+package com.github.ilpersi.BHBot;
+
+import jdk.incubator.vector.IntVector;
+import jdk.incubator.vector.VectorMask;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * Optional matching backend for FindSubimage based on the incubating Vector API. Each row of the cue is compared
+ * against the image using as many lanes as the CPU supports, with the same rules of the scalar matcher: a tolerance
+ * for each channel, transparent pixels ignored or treated as obscured background.
+ * <p>
+ * This class must only be used when the jdk.incubator.vector module is available, use FindSubimage.setVectorBackend to
+ * enable it safely. It is compiled in its own step of the build (see pom.xml), as it is the only class that needs the
+ * incubator module.
+ */
+class VectorMatcher implements FindSubimage.Matcher {
+
+    private static final VectorSpecies<Integer> SPECIES = IntVector.SPECIES_PREFERRED;
+
+    /**
+     * @param imageInRGB                 pixels of the image we are searching in
+     * @param stride                     width of the image we are searching in
+     * @param base                       index in imageInRGB of the candidate top-left corner
+     * @param kernel                     the compiled cue
+     * @param opaqueOffsets              kernel opaque offsets for the current stride, used to test anchors
+     * @param tolerance                  maximum difference allowed on each channel
+     * @param mismatchBudget             maximum number of mismatching pixels
+     * @param treatTransparentAsObscured same meaning of the FindSubimage flag
+     * @return true if the cue matches in the candidate position
+     */
+    @Override
+    public boolean matches(int[] imageInRGB, int stride, int base, CueKernel kernel, int[] opaqueOffsets, int tolerance, double mismatchBudget, boolean treatTransparentAsObscured) {
+
+        // Candidates with more wrong anchors than the budget are rejected without loading any vector
+        int wrongAnchors = 0;
+        for (int k = 0; k < kernel.anchors; k++) {
+            int c1 = imageInRGB[base + opaqueOffsets[k]];
+
+            if (
+                    Math.abs(((c1 >> 16) & 0xff) - kernel.red[k]) > tolerance ||
+                            Math.abs(((c1 >> 8) & 0xff) - kernel.green[k]) > tolerance ||
+                            Math.abs((c1 & 0xff) - kernel.blue[k]) > tolerance
+            ) {
+                wrongAnchors++;
+
+                if (wrongAnchors > mismatchBudget) return false;
+            }
+        }
+
+        int notMatched = 0;
+        int width = kernel.width;
+
+        for (int i = 0; i < kernel.height; i++) {
+            int imageInRow = base + (i * stride);
+            int subImageRow = i * width;
+
+            for (int j = 0; j < width; j += SPECIES.length()) {
+                VectorMask<Integer> inRange = SPECIES.indexInRange(j, width);
+                VectorMask<Integer> opaque = IntVector.fromArray(SPECIES, kernel.rowOpaque, subImageRow + j, inRange)
+                        .compare(VectorOperators.NE, 0);
+
+                IntVector c1 = IntVector.fromArray(SPECIES, imageInRGB, imageInRow + j, inRange);
+                IntVector c1Red = c1.lanewise(VectorOperators.LSHR, 16).and(0xff);
+                IntVector c1Green = c1.lanewise(VectorOperators.LSHR, 8).and(0xff);
+                IntVector c1Blue = c1.and(0xff);
+
+                VectorMask<Integer> mismatch = c1Red.sub(IntVector.fromArray(SPECIES, kernel.rowRed, subImageRow + j, inRange)).abs().compare(VectorOperators.GT, tolerance)
+                        .or(c1Green.sub(IntVector.fromArray(SPECIES, kernel.rowGreen, subImageRow + j, inRange)).abs().compare(VectorOperators.GT, tolerance))
+                        .or(c1Blue.sub(IntVector.fromArray(SPECIES, kernel.rowBlue, subImageRow + j, inRange)).abs().compare(VectorOperators.GT, tolerance))
+                        .and(opaque);
+                notMatched += mismatch.trueCount();
+
+                // treat transparent pixel as obscured background:
+                if (treatTransparentAsObscured) {
+                    VectorMask<Integer> transparent = inRange.andNot(opaque);
+                    notMatched += c1Red.add(c1Green).add(c1Blue).compare(VectorOperators.GT, 200).and(transparent).trueCount();
+                }
+
+                if (notMatched > mismatchBudget) return false;
+            }
+        }
+
+        return true;
+    }
+}